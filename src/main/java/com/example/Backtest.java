@@ -0,0 +1,269 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import com.example.api.Tider;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+/**
+ * Backtest av laddstrategier mot historiska priser: hur mycket hade en strategi sparat
+ * jämfört med att ladda direkt vid ankomst, per zon och år?
+ *
+ * <p>Körningen sker i två steg. {@link #ladda} hämtar varje dag och zon en gång på virtuella trådar
+ * och sparar priserna i primitiva arrayer. {@link #kor} delar sedan upp alla dag×zon-par på en
+ * fork/join-pool. Fork/join används bara för beräkningar, aldrig för att vänta på nätverket.
+ * En laddad historik kan köras mot många strategier och parametrar utan ny hämtning.</p>
+ */
+public final class Backtest {
+
+    // Antal dag×zon-par som en deluppgift räknar själv innan den delar vidare
+    private static final int TROSKEL = 64;
+
+    // Högsta antal samtidiga hämtningar i ladda, så att ett långt intervall inte skickar allt på en gång
+    private static final int SAMTIDIGA_HAMTNINGAR = 16;
+
+    /** Hur bilen laddas inom laddperioden. */
+    public sealed interface Strategi permits Sammanhangande, DeladBilligast, FastTid {}
+
+    /** Billigaste sammanhängande fönstret inom perioden. */
+    public record Sammanhangande() implements Strategi {}
+
+    /** De billigaste intervallen inom perioden, i valfri ordning (laddningen kan delas upp). */
+    public record DeladBilligast() implements Strategi {}
+
+    /** Ladda från en fast klockslag (första intervallet som startar då eller senare i perioden). */
+    public record FastTid(LocalTime start) implements Strategi {}
+
+    /**
+     * Laddbehovet varje dag: bilen kommer {@code ankomst}, åker {@code avgang} (nästa dag om avgång
+     * är före ankomst) och behöver laddas {@code timmar} timmar med {@code effektKW}.
+     */
+    public record Laddbehov(LocalTime ankomst, LocalTime avgang, int timmar, double effektKW) {}
+
+    /** Fördelningen av besparingen i kr per dag. */
+    public record Fordelning(int dagar, double summa, double medel, double p10, double median, double p90) {}
+
+    /**
+     * En laddad prishistorik. Per zon och dag: priserna och varje intervalls start som minut
+     * på dygnet (lokal tid), samt intervallängden i minuter. Saknade dagar är null.
+     */
+    public record Historik(List<ElpriserAPI.Prisklass> zoner, LocalDate fran, int antalDagar,
+                           double[][][] priser, int[][][] startMinut, int[][] intervallMinuter) {}
+
+    private Backtest() {
+    }
+
+    /**
+     * Hämtar alla dagar från och med {@code fran} till och med {@code till} för zonerna, parallellt
+     * (högst {@value #SAMTIDIGA_HAMTNINGAR} åt gången).
+     * Källan bör vara cachad (t.ex. {@code api::getPriser} med cachning eller delad cache).
+     */
+    public static Historik ladda(BiFunction<LocalDate, ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> kalla,
+                                 List<ElpriserAPI.Prisklass> zoner, LocalDate fran, LocalDate till) {
+        // En extra dag på slutet så att perioder över midnatt har data för sista dagen
+        int antalDagar = (int) (till.toEpochDay() - fran.toEpochDay()) + 1;
+        int dagarMedMarginal = antalDagar + 1;
+        double[][][] priser = new double[zoner.size()][dagarMedMarginal][];
+        int[][][] startMinut = new int[zoner.size()][dagarMedMarginal][];
+        int[][] intervallMinuter = new int[zoner.size()][dagarMedMarginal];
+
+        // Hämtningarna väntar på nätverket och körs därför på virtuella trådar, inte i fork/join-poolen
+        int antal = zoner.size() * dagarMedMarginal;
+        AtomicReferenceArray<List<ElpriserAPI.Elpris>> listor = new AtomicReferenceArray<>(antal);
+        Semaphore platser = new Semaphore(SAMTIDIGA_HAMTNINGAR);
+        try (ExecutorService hamtningar = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < antal; i++) {
+                int index = i;
+                hamtningar.execute(() -> {
+                    platser.acquireUninterruptibly();
+                    try {
+                        listor.set(index, kalla.apply(fran.plusDays(index % dagarMedMarginal), zoner.get(index / dagarMedMarginal)));
+                    } finally {
+                        platser.release();
+                    }
+                });
+            }
+        }
+
+        ForkJoinPool.commonPool().invoke(new Intervall(0, antal, (fran2, till2) -> {
+            for (int i = fran2; i < till2; i++) {
+                int z = i / dagarMedMarginal, d = i % dagarMedMarginal;
+                List<ElpriserAPI.Elpris> lista = listor.get(i);
+                if (lista == null || lista.isEmpty()) continue;
+                double[] p = new double[lista.size()];
+                int[] m = new int[lista.size()];
+                for (int j = 0; j < p.length; j++) {
+                    ZonedDateTime start = lista.get(j).timeStart();
+                    p[j] = lista.get(j).sekPerKWh();
+                    m[j] = start.getHour() * 60 + start.getMinute();
+                }
+                priser[z][d] = p;
+                startMinut[z][d] = m;
+                intervallMinuter[z][d] = (int) (Tider.intervallSekunder(lista) / 60);
+            }
+        }));
+        return new Historik(List.copyOf(zoner), fran, antalDagar, priser, startMinut, intervallMinuter);
+    }
+
+    /**
+     * Kör strategin mot historiken. Dagar där perioden saknar data eller är för kort räknas inte.
+     * @return besparingen jämfört med laddning vid ankomst, per zon och år.
+     */
+    public static Map<ElpriserAPI.Prisklass, Map<Integer, Fordelning>> kor(Historik historik, Laddbehov behov, Strategi strategi) {
+        int antalZoner = historik.zoner().size();
+        int antalDagar = historik.antalDagar();
+        double[] besparing = new double[antalZoner * antalDagar];
+
+        ForkJoinPool.commonPool().invoke(new Intervall(0, besparing.length, (fran, till) -> {
+            for (int i = fran; i < till; i++) {
+                besparing[i] = besparing(historik, i / antalDagar, i % antalDagar, behov, strategi);
+            }
+        }));
+
+        Map<ElpriserAPI.Prisklass, Map<Integer, Fordelning>> resultat = new EnumMap<>(ElpriserAPI.Prisklass.class);
+        for (int z = 0; z < antalZoner; z++) {
+            Map<Integer, Fordelning> perAr = new TreeMap<>();
+            int d = 0;
+            while (d < antalDagar) {
+                int ar = historik.fran().plusDays(d).getYear();
+                int slut = d;
+                while (slut < antalDagar && historik.fran().plusDays(slut).getYear() == ar) slut++;
+                Fordelning f = fordelning(besparing, z * antalDagar + d, z * antalDagar + slut);
+                if (f != null) perAr.put(ar, f);
+                d = slut;
+            }
+            resultat.put(historik.zoner().get(z), perAr);
+        }
+        return resultat;
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    // Besparing i kr för en dag och zon, NaN om dagen inte kan räknas
+    private static double besparing(Historik h, int z, int d, Laddbehov behov, Strategi strategi) {
+        int intervall = h.intervallMinuter()[z][d];
+        if (h.priser()[z][d] == null || intervall <= 0) {
+            return Double.NaN;
+        }
+        int ankomst = behov.ankomst().toSecondOfDay() / 60;
+        int avgang = behov.avgang().toSecondOfDay() / 60;
+        boolean overMidnatt = avgang <= ankomst;
+        if (overMidnatt && h.priser()[z][d + 1] == null) {
+            return Double.NaN;
+        }
+
+        // Samla periodens priser i tidsordning; fastIndex = första intervallet för FastTid
+        int fastMinut = strategi instanceof FastTid ft ? ft.start().toSecondOfDay() / 60 : ankomst;
+        int fastIndex = -1;
+        double[] period = new double[h.priser()[z][d].length + (overMidnatt ? h.priser()[z][d + 1].length : 0)];
+        int n = 0;
+        for (int dag = d; dag <= (overMidnatt ? d + 1 : d); dag++) {
+            double[] p = h.priser()[z][dag];
+            int[] m = h.startMinut()[z][dag];
+            for (int j = 0; j < p.length; j++) {
+                boolean med = overMidnatt
+                        ? (dag == d ? m[j] >= ankomst : m[j] < avgang)
+                        : m[j] >= ankomst && m[j] < avgang;
+                if (!med) continue;
+                // Minuter sedan ankomst, för att hitta FastTid även över midnatt
+                if (fastIndex < 0 && (dag > d ? m[j] + 1440 : m[j]) >= (fastMinut < ankomst ? fastMinut + 1440 : fastMinut)) {
+                    fastIndex = n;
+                }
+                period[n++] = p[j];
+            }
+        }
+
+        int k = behov.timmar() * 60 / intervall;
+        if (k <= 0 || k > n) {
+            return Double.NaN;
+        }
+        double kwhPerIntervall = behov.effektKW() * intervall / 60.0;
+
+        double vidAnkomst = summa(period, 0, k);
+        double medStrategi = switch (strategi) {
+            case Sammanhangande s -> billigasteFonster(period, n, k);
+            case DeladBilligast s -> {
+                double[] v = Arrays.copyOf(period, n);
+                double sum = 0;
+                for (int index : PrisRangordning.billigaste(v, k)) sum += v[index];
+                yield sum;
+            }
+            case FastTid s -> fastIndex >= 0 && fastIndex + k <= n ? summa(period, fastIndex, fastIndex + k) : Double.NaN;
+        };
+        return (vidAnkomst - medStrategi) * kwhPerIntervall;
+    }
+
+    private static double summa(double[] v, int fran, int till) {
+        double s = 0;
+        for (int i = fran; i < till; i++) s += v[i];
+        return s;
+    }
+
+    private static double billigasteFonster(double[] v, int n, int k) {
+        double s = summa(v, 0, k);
+        double basta = s;
+        for (int i = k; i < n; i++) {
+            s += v[i] - v[i - k];
+            if (s < basta) basta = s;
+        }
+        return basta;
+    }
+
+    private static Fordelning fordelning(double[] besparing, int fran, int till) {
+        double[] v = new double[till - fran];
+        int n = 0;
+        double summa = 0;
+        for (int i = fran; i < till; i++) {
+            if (Double.isNaN(besparing[i])) continue;
+            v[n++] = besparing[i];
+            summa += besparing[i];
+        }
+        if (n == 0) {
+            return null;
+        }
+        Arrays.sort(v, 0, n);
+        return new Fordelning(n, summa, summa / n, v[(int) (0.1 * (n - 1))], v[(n - 1) / 2], v[(int) (0.9 * (n - 1))]);
+    }
+
+    @FunctionalInterface
+    private interface Arbete {
+        void kor(int fran, int till);
+    }
+
+    // Delar [fran, till) på mitten tills delarna är små nog att köras direkt. Serialiseras aldrig.
+    @SuppressWarnings("serial")
+    private static final class Intervall extends RecursiveAction {
+        private final int fran, till;
+        private final Arbete arbete;
+
+        Intervall(int fran, int till, Arbete arbete) {
+            this.fran = fran;
+            this.till = till;
+            this.arbete = arbete;
+        }
+
+        @Override
+        protected void compute() {
+            if (till - fran <= TROSKEL) {
+                arbete.kor(fran, till);
+                return;
+            }
+            int mitt = (fran + till) >>> 1;
+            invokeAll(new Intervall(fran, mitt, arbete), new Intervall(mitt, till, arbete));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example;
+
+/**
+ * Räknar ut när ett hembatteri ska laddas och laddas ur för att tjäna mest på prisskillnader.
+ * Dynamisk programmering baklänges över prisserien, med laddningsnivån diskretiserad i ett antal steg.
+ * Värdet för varje nivå lagras bara för nuvarande och nästa intervall (två rullande rader),
+ * så minnet för själva optimeringen är O(nivåer) oavsett seriens längd.
+ */
+public final class BatteriOptimerare {
+
+    /**
+     * @param kapacitetKWh Användbar kapacitet.
+     * @param effektKW Max laddnings- och urladdningseffekt.
+     * @param verkningsgrad Verkningsgrad tur och retur (0–1). Förlusten delas lika på laddning och urladdning.
+     */
+    public record Batteri(double kapacitetKWh, double effektKW, double verkningsgrad) {
+        public Batteri {
+            if (kapacitetKWh <= 0 || effektKW <= 0 || verkningsgrad <= 0 || verkningsgrad > 1) {
+                throw new IllegalArgumentException("Ogiltigt batteri: " + kapacitetKWh + " kWh, " + effektKW + " kW, " + verkningsgrad);
+            }
+        }
+    }
+
+    /**
+     * @param vinstSek Intäkt från urladdning minus kostnad för laddning.
+     * @param natKWh Energi mot elnätet per intervall: positiv = köpt (laddning), negativ = såld (urladdning).
+     * @param nivaKWh Laddningsnivå i batteriet i slutet av varje intervall.
+     */
+    public record Resultat(double vinstSek, double[] natKWh, double[] nivaKWh) {}
+
+    // Standardupplösning på laddningsnivån
+    public static final int STANDARD_STEG = 100;
+
+    private BatteriOptimerare() {
+    }
+
+    /**
+     * Bästa möjliga vinst, utan schema. Minnet är O(steg), så en hel års-backtest går bra.
+     * Batteriet antas vara tomt i början.
+     */
+    public static double vinst(double[] sekPerKWh, double intervallTimmar, Batteri batteri, int steg) {
+        return los(sekPerKWh, intervallTimmar, batteri, steg, null);
+    }
+
+    /**
+     * Bästa schema och vinst. Utöver de rullande raderna sparas ett beslut (short) per intervall och nivå.
+     */
+    public static Resultat optimera(double[] sekPerKWh, double intervallTimmar, Batteri batteri, int steg) {
+        int n = sekPerKWh.length;
+        short[] beslut = new short[n * (steg + 1)];
+        double vinst = los(sekPerKWh, intervallTimmar, batteri, steg, beslut);
+
+        // Följ besluten framåt från tomt batteri
+        double kwhPerSteg = batteri.kapacitetKWh() / steg;
+        double laddVerkningsgrad = Math.sqrt(batteri.verkningsgrad());
+        double[] natKWh = new double[n];
+        double[] nivaKWh = new double[n];
+        int niva = 0;
+        for (int t = 0; t < n; t++) {
+            int d = beslut[t * (steg + 1) + niva];
+            natKWh[t] = d > 0 ? d * kwhPerSteg / laddVerkningsgrad : d * kwhPerSteg * laddVerkningsgrad;
+            niva += d;
+            nivaKWh[t] = niva * kwhPerSteg;
+        }
+        return new Resultat(vinst, natKWh, nivaKWh);
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    // Baklänges DP. V[s] = bästa framtida vinst från nivå s. beslut kan vara null.
+    private static double los(double[] pris, double intervallTimmar, Batteri batteri, int steg, short[] beslut) {
+        if (steg <= 0 || steg > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Ogiltigt antal steg: " + steg);
+        }
+        int n = pris.length;
+        if (n == 0) {
+            return 0;
+        }
+        double kwhPerSteg = batteri.kapacitetKWh() / steg;
+        // Hur många nivåsteg batteriet hinner flytta under ett intervall
+        int k = (int) Math.min(steg, Math.floor(batteri.effektKW() * intervallTimmar / kwhPerSteg + 1e-9));
+        double laddVerkningsgrad = Math.sqrt(batteri.verkningsgrad());
+
+        double[] nasta = new double[steg + 1]; // V för t+1, 0 efter sista intervallet
+        double[] nu = new double[steg + 1];
+        double[] vinstForSteg = new double[2 * k + 1];
+
+        for (int t = n - 1; t >= 0; t--) {
+            double p = pris[t];
+            for (int d = -k; d <= k; d++) {
+                vinstForSteg[d + k] = d > 0
+                        ? -p * d * kwhPerSteg / laddVerkningsgrad
+                        : -p * d * kwhPerSteg * laddVerkningsgrad;
+            }
+            int rad = t * (steg + 1);
+            for (int s = 0; s <= steg; s++) {
+                int lagst = -Math.min(k, s);
+                int hogst = Math.min(k, steg - s);
+                // Att stå still (d = 0) först, så att stillastående vinner vid lika värde
+                double basta = nasta[s];
+                int bastaD = 0;
+                for (int d = lagst; d <= hogst; d++) {
+                    double v = vinstForSteg[d + k] + nasta[s + d];
+                    if (v > basta + 1e-12) {
+                        basta = v;
+                        bastaD = d;
+                    }
+                }
+                nu[s] = basta;
+                if (beslut != null) {
+                    beslut[rad + s] = (short) bastaD;
+                }
+            }
+            double[] tmp = nasta;
+            nasta = nu;
+            nu = tmp;
+        }
+        return nasta[0];
+    }
+}
@@ -0,0 +1,170 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import com.example.api.Tider;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * --watch: håller ett ElpriserAPI vid liv och skriver bara ut det som ändrats.
+ * Bara dagar som ännu inte är kompletta (oftast morgondagen före ~13:00) pollas, och de
+ * kontrolleras med {@link ElpriserAPI#uppdatera} så att oförändrade svar blir billiga.
+ * Varje dags data hashas; är hashen densamma händer ingenting. När nya intervall tillkommer
+ * i slutet av serien byggs statistiken och laddfönstret på i stället för att räknas om.
+ * Som i vanligt läge gäller lägsta, högsta och medelpris idag, och laddfönstret idag och imorgon.
+ */
+final class Bevakning {
+
+    private final ElpriserAPI api;
+    private final ElpriserAPI.Prisklass zon;
+    private final int laddTimmar;
+    private final Supplier<LocalDate> klocka;
+
+    private LocalDate aktuellDag;
+    // Per dag (0 = idag, 1 = imorgon): senaste data och dess hash (0 = ingen data)
+    private final List<List<ElpriserAPI.Elpris>> dagar = new ArrayList<>(List.of(List.of(), List.of()));
+    private final long[] hash = new long[2];
+
+    private final List<ElpriserAPI.Elpris> serie = new ArrayList<>();
+    private LopandeStatistik statistik;      // hela serien, för laddfönstret
+    private LopandeStatistik statistikIdag;  // bara idag, för lägsta/högsta/medel
+
+    Bevakning(ElpriserAPI api, ElpriserAPI.Prisklass zon, int laddTimmar, Supplier<LocalDate> klocka) {
+        this.api = api;
+        this.zon = zon;
+        this.laddTimmar = laddTimmar;
+        this.klocka = klocka;
+    }
+
+    // Kör tills tråden avbryts (Ctrl+C avslutar hela processen)
+    void kor(long sekunderMellanVarv) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                varv();
+                Thread.sleep(sekunderMellanVarv * 1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ett varv: kolla de dagar som kan ändras och skriv ut det som är nytt.
+     * @return true om något skrevs ut.
+     */
+    boolean varv() {
+        LocalDate idag = klocka.get();
+        if (!idag.equals(aktuellDag)) {
+            // Ny dag: gårdagens morgondag blir idag, så det enklaste är att börja om
+            aktuellDag = idag;
+            dagar.set(0, List.of());
+            dagar.set(1, List.of());
+            hash[0] = hash[1] = 0;
+            serie.clear();
+            statistik = null;
+            statistikIdag = null;
+            System.out.println("=== Elpriser för " + zon + " från " + idag + " ===");
+        }
+
+        boolean andrat = false;
+        boolean byggOm = statistik == null;
+        int forstaNya = serie.size();
+
+        for (int d = 0; d < 2; d++) {
+            LocalDate dag = aktuellDag.plusDays(d);
+            if (arKomplett(dagar.get(d), dag)) {
+                continue; // publicerade dagpriser ändras inte, så de pollas inte igen
+            }
+            ElpriserAPI.Hamtning hamtning = api.uppdatera(dag, zon);
+            if (hamtning.status() != ElpriserAPI.HamtningsStatus.OK) {
+                continue;
+            }
+            long h = hash(hamtning.priser());
+            if (h == hash[d]) {
+                continue;
+            }
+
+            List<ElpriserAPI.Elpris> tidigare = dagar.get(d);
+            List<ElpriserAPI.Elpris> nya = hamtning.priser();
+            boolean sistaDag = d == 1 || dagar.get(1).isEmpty();
+            // Bara nya intervall i slutet av serien kan läggas på; annars räknas allt om
+            if (!(sistaDag && arBorjanAv(tidigare, nya))) {
+                byggOm = true;
+            }
+            dagar.set(d, nya);
+            hash[d] = h;
+            andrat = true;
+        }
+
+        if (!andrat) {
+            return false;
+        }
+
+        if (byggOm) {
+            serie.clear();
+            serie.addAll(dagar.get(0));
+            serie.addAll(dagar.get(1));
+            statistik = new LopandeStatistik(laddTimmar);
+            statistikIdag = new LopandeStatistik(0);
+            forstaNya = 0;
+        } else {
+            for (int i = serie.size(); i < dagar.get(0).size() + dagar.get(1).size(); i++) {
+                serie.add(i < dagar.get(0).size() ? dagar.get(0).get(i) : dagar.get(1).get(i - dagar.get(0).size()));
+            }
+        }
+        for (int i = forstaNya; i < serie.size(); i++) {
+            statistik.lagg(serie.get(i).sekPerKWh());
+            Main.printPris(serie.get(i));
+        }
+        // Idag kan bara ha växt i slutet här (annars byggdes allt om ovan)
+        for (int i = statistikIdag.antal(); i < dagar.get(0).size(); i++) {
+            statistikIdag.lagg(dagar.get(0).get(i).sekPerKWh());
+        }
+        skrivSammanfattning();
+        return true;
+    }
+
+    // Samma rader som vanligt läge, via Mains utskrifter
+    private void skrivSammanfattning() {
+        List<ElpriserAPI.Elpris> idag = dagar.get(0);
+        if (statistikIdag.antal() > 0) {
+            Main.skrivMinMax(new Main.MinMax(
+                    statistikIdag.min(), Tider.timme(idag.get(statistikIdag.minIndex()).timeStart()),
+                    statistikIdag.max(), Tider.timme(idag.get(statistikIdag.maxIndex()).timeStart())));
+            Main.skrivMedelpris(statistikIdag.medel());
+        }
+        if (laddTimmar > 0) {
+            int start = statistik.laddfonsterStart();
+            Main.skrivLaddfonster(start < 0 ? null : new Main.Laddfonster(
+                    Tider.minut(serie.get(start).timeStart()), statistik.laddfonsterMedel() * 100), laddTimmar);
+        }
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    // En dag är komplett när sista intervallet slutar vid nästa dags början
+    private static boolean arKomplett(List<ElpriserAPI.Elpris> priser, LocalDate dag) {
+        if (priser.isEmpty()) {
+            return false;
+        }
+        ZonedDateTime slut = priser.get(priser.size() - 1).timeEnd();
+        return !slut.toLocalDate().isBefore(dag.plusDays(1));
+    }
+
+    private static boolean arBorjanAv(List<ElpriserAPI.Elpris> kort, List<ElpriserAPI.Elpris> lang) {
+        return kort.size() <= lang.size() && lang.subList(0, kort.size()).equals(kort);
+    }
+
+    private static long hash(List<ElpriserAPI.Elpris> priser) {
+        long h = 1125899906842597L;
+        for (ElpriserAPI.Elpris p : priser) {
+            h = 31 * h + Double.doubleToLongBits(p.sekPerKWh());
+            h = 31 * h + p.timeStart().toEpochSecond();
+        }
+        return h == 0 ? 1 : h;
+    }
+}
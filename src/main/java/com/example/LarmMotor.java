@@ -0,0 +1,251 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import com.example.api.Tider;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Prislarm för många prenumerationer samtidigt, t.ex. "meddela mig när SE4 går under 20 öre"
+ * eller "när 3h-snittet går över 150 öre".
+ * Prenumerationerna indexeras per zon (och fönsterlängd) i sorterade primitiva arrayer av trösklar.
+ * En ny dags priser utvärderas med en binärsökning per intervall, dvs O(intervall · log prenumerationer + larm),
+ * i stället för att varje prenumeration jämförs med varje intervall.
+ * Varje prenumeration larmar högst en gång per utvärdering, vid det första intervall där villkoret uppfylls.
+ */
+public final class LarmMotor {
+
+    /**
+     * Ett utlöst larm. Värdet är priset (eller snittpriset) i öre/kWh som utlöste larmet.
+     */
+    public record Larm(long prenumeration, ElpriserAPI.Prisklass zon, ZonedDateTime tid, double orePerKWh) {}
+
+    /**
+     * Tar emot utlösta larm. Anropas på den tråd som kör {@link #utvardera}.
+     */
+    @FunctionalInterface
+    public interface LarmLyssnare {
+        void larm(Larm larm);
+    }
+
+    // "Pris under X" per zon
+    private final Map<ElpriserAPI.Prisklass, Grupp> underGrans = new EnumMap<>(ElpriserAPI.Prisklass.class);
+    // "Snitt över Y" per zon och fönsterlängd i timmar
+    private final Map<ElpriserAPI.Prisklass, Map<Integer, Grupp>> snittOverGrans = new EnumMap<>(ElpriserAPI.Prisklass.class);
+
+    private final List<LarmLyssnare> lyssnare = new CopyOnWriteArrayList<>();
+    private long nastaId = 1;
+
+    public void laggTillLyssnare(LarmLyssnare l) {
+        lyssnare.add(l);
+    }
+
+    /**
+     * Prenumerera på att priset i zonen går under en gräns.
+     * @return id för prenumerationen, skickas med i varje {@link Larm}.
+     */
+    public synchronized long prenumereraUnder(ElpriserAPI.Prisklass zon, double orePerKWh) {
+        long id = nastaId++;
+        underGrans.computeIfAbsent(zon, z -> new Grupp()).lagg(orePerKWh, id);
+        return id;
+    }
+
+    /**
+     * Prenumerera på att det rullande snittpriset över {@code timmar} timmar går över en gräns.
+     */
+    public synchronized long prenumereraSnittOver(ElpriserAPI.Prisklass zon, int timmar, double orePerKWh) {
+        if (timmar <= 0) {
+            throw new IllegalArgumentException("Fönstret måste vara minst 1 timme: " + timmar);
+        }
+        long id = nastaId++;
+        snittOverGrans.computeIfAbsent(zon, z -> new TreeMap<>())
+                .computeIfAbsent(timmar, t -> new Grupp())
+                .lagg(orePerKWh, id);
+        return id;
+    }
+
+    public synchronized int antalPrenumerationer() {
+        int antal = 0;
+        for (Grupp g : underGrans.values()) antal += g.antal;
+        for (Map<Integer, Grupp> m : snittOverGrans.values()) {
+            for (Grupp g : m.values()) antal += g.antal;
+        }
+        return antal;
+    }
+
+    /**
+     * Utvärderar alla prenumerationer för zonen mot en ny prisserie (t.ex. resultatet av getPriser).
+     * @return antal larm som skickades till lyssnarna.
+     */
+    public synchronized int utvardera(ElpriserAPI.Prisklass zon, List<ElpriserAPI.Elpris> priser) {
+        if (priser == null || priser.isEmpty()) {
+            return 0;
+        }
+        double[] ore = PrisRangordning.priser(priser);
+        for (int i = 0; i < ore.length; i++) ore[i] *= 100;
+
+        int antalLarm = 0;
+
+        Grupp under = underGrans.get(zon);
+        if (under != null && under.antal > 0) {
+            under.sortera();
+            // Utlösta är de med tröskel > pris, dvs ett suffix av de sorterade trösklarna.
+            // Suffixet kan bara växa; nya prenumerationer i suffixet larmar vid detta intervall.
+            int forstaUtlost = under.antal;
+            for (int i = 0; i < ore.length && forstaUtlost > 0; i++) {
+                int k = under.forstaStorreAn(ore[i]);
+                for (int j = k; j < forstaUtlost; j++) {
+                    skicka(new Larm(under.id[j], zon, priser.get(i).timeStart(), ore[i]));
+                    antalLarm++;
+                }
+                forstaUtlost = Math.min(forstaUtlost, k);
+            }
+        }
+
+        Map<Integer, Grupp> snitt = snittOverGrans.get(zon);
+        if (snitt != null) {
+            long intervallSekunder = Tider.intervallSekunder(priser);
+            for (Map.Entry<Integer, Grupp> e : snitt.entrySet()) {
+                Grupp g = e.getValue();
+                int bredd = (int) Math.max(1, e.getKey() * 3600L / intervallSekunder);
+                if (g.antal == 0 || bredd > ore.length) continue;
+                g.sortera();
+                // Utlösta är de med tröskel < snitt, dvs ett prefix som bara kan växa
+                int sistaUtlost = 0;
+                double summa = 0;
+                for (int i = 0; i < ore.length && sistaUtlost < g.antal; i++) {
+                    summa += ore[i];
+                    if (i >= bredd) summa -= ore[i - bredd];
+                    if (i < bredd - 1) continue;
+                    double medel = summa / bredd;
+                    int k = g.forstaStorreEllerLika(medel);
+                    for (int j = sistaUtlost; j < k; j++) {
+                        // Tidpunkten är fönstrets start
+                        skicka(new Larm(g.id[j], zon, priser.get(i - bredd + 1).timeStart(), medel));
+                        antalLarm++;
+                    }
+                    sistaUtlost = Math.max(sistaUtlost, k);
+                }
+            }
+        }
+        return antalLarm;
+    }
+
+    /**
+     * En lyssnare som skriver larmen som rader till en lokal fil ("id;zon;tid;öre").
+     * Skrivningen är buffrad, så filen måste stängas för att allt ska hamna på disk.
+     */
+    public static FilLyssnare tillFil(Path fil) throws IOException {
+        return new FilLyssnare(Files.newBufferedWriter(fil, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    public static final class FilLyssnare implements LarmLyssnare, Closeable {
+        private final BufferedWriter writer;
+
+        private FilLyssnare(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public synchronized void larm(Larm larm) {
+            try {
+                writer.write(Long.toString(larm.prenumeration()));
+                writer.write(';');
+                writer.write(larm.zon().name());
+                writer.write(';');
+                writer.write(larm.tid().toString());
+                writer.write(';');
+                writer.write(String.format(Locale.ROOT, "%.2f", larm.orePerKWh()));
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    private void skicka(Larm larm) {
+        for (LarmLyssnare l : lyssnare) {
+            l.larm(larm);
+        }
+    }
+
+    /**
+     * Trösklar och id i två parallella primitiva arrayer. Sorteras lat (vid nästa utvärdering)
+     * så att en miljon prenumerationer kan läggas till utan att sorteras om för varje.
+     */
+    private static final class Grupp {
+        double[] trosklar = new double[16];
+        long[] id = new long[16];
+        int antal;
+        boolean sorterad = true;
+
+        void lagg(double troskel, long prenumeration) {
+            if (antal == trosklar.length) {
+                trosklar = Arrays.copyOf(trosklar, antal * 2);
+                id = Arrays.copyOf(id, antal * 2);
+            }
+            trosklar[antal] = troskel;
+            id[antal] = prenumeration;
+            antal++;
+            sorterad = false;
+        }
+
+        void sortera() {
+            if (sorterad) return;
+            double[] t = Arrays.copyOf(trosklar, antal);
+            int[] ordning = PrisRangordning.sorteraStigande(t);
+            double[] nyaTrosklar = new double[trosklar.length];
+            long[] nyaId = new long[id.length];
+            for (int i = 0; i < antal; i++) {
+                nyaTrosklar[i] = t[ordning[i]];
+                nyaId[i] = id[ordning[i]];
+            }
+            trosklar = nyaTrosklar;
+            id = nyaId;
+            sorterad = true;
+        }
+
+        // Första index med tröskel > v
+        int forstaStorreAn(double v) {
+            int lo = 0, hi = antal;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (trosklar[mid] > v) hi = mid; else lo = mid + 1;
+            }
+            return lo;
+        }
+
+        // Första index med tröskel >= v
+        int forstaStorreEllerLika(double v) {
+            int lo = 0, hi = antal;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (trosklar[mid] >= v) hi = mid; else lo = mid + 1;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Statistik som byggs på allt eftersom nya intervall kommer, utan att räknas om från början.
+ * Håller lägsta/högsta pris (tidigaste vinner vid lika), medelpris och, om en fönsterlängd
+ * är angiven, det billigaste sammanhängande laddfönstret. Varje nytt intervall kostar O(1):
+ * med prefixsummor behöver bara de fönster som slutar i det nya intervallet provas.
+ * Utan laddfönster sparas bara en löpande summa, så minnet är konstant oavsett seriens längd.
+ */
+final class LopandeStatistik {
+
+    private final int fonster;
+    private double[] prefix;   // prefix[i] = summan av de i första priserna, null utan laddfönster
+    private double summa;      // summan av alla priser
+    private int antal;
+
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+    private int minIndex = -1;
+    private int maxIndex = -1;
+
+    private double bastaFonsterSumma = Double.MAX_VALUE;
+    private int bastaFonsterStart = -1;
+
+    /**
+     * @param fonster Laddfönstrets längd i antal intervall, 0 om inget laddfönster ska följas.
+     */
+    LopandeStatistik(int fonster) {
+        this.fonster = fonster;
+        this.prefix = fonster > 0 ? new double[128] : null;
+    }
+
+    void lagg(double pris) {
+        summa += pris;
+        if (pris < min) { min = pris; minIndex = antal; }
+        if (pris > max) { max = pris; maxIndex = antal; }
+        antal++;
+        if (prefix == null) {
+            return;
+        }
+
+        if (antal == prefix.length) {
+            prefix = Arrays.copyOf(prefix, prefix.length * 2);
+        }
+        prefix[antal] = summa;
+        if (antal >= fonster) {
+            double fonsterSumma = prefix[antal] - prefix[antal - fonster];
+            if (fonsterSumma < bastaFonsterSumma) {
+                bastaFonsterSumma = fonsterSumma;
+                bastaFonsterStart = antal - fonster;
+            }
+        }
+    }
+
+    int antal() { return antal; }
+    double min() { return min; }
+    double max() { return max; }
+    int minIndex() { return minIndex; }
+    int maxIndex() { return maxIndex; }
+    double medel() { return antal == 0 ? Double.NaN : summa / antal; }
+
+    // -1 om det ännu inte finns tillräckligt många intervall
+    int laddfonsterStart() { return bastaFonsterStart; }
+    double laddfonsterMedel() { return bastaFonsterStart < 0 ? Double.NaN : bastaFonsterSumma / fonster; }
+}
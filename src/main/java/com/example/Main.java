@@ -1,20 +1,29 @@
 package com.example;
 
+import com.example.api.DeladPrisCache;
 import com.example.api.ElpriserAPI; // importera API:et
+import com.example.api.Tider;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.text.NumberFormat; // Format för tal
 import java.time.LocalDate; // Representerar datum
-import java.time.format.DateTimeFormatter; // Formaterar datum till strängar eller tolkar strängar till datum
+import java.time.LocalTime; // Klockslag utan datum
 import java.util.*; // Importerar datastrukturer som List, Map, Set, Collections etc.
 
 
 public class Main {
 
-    // timFormatter formaterar tiden till timmar (00–23) för utskrift
     // nf formaterar priser till svenska tal med alltid 2 decimaler (t.ex. 12,30 öre)
-    static DateTimeFormatter timFormatter = DateTimeFormatter.ofPattern("HH");
+    // Tidsetiketterna ("HH", "HH:mm") kommer från Tider
     static NumberFormat nf = NumberFormat.getNumberInstance(Locale.of("sv", "SE"));
 
+    // Med --format går felmeddelanden till System.err, så att standard ut bara innehåller data
+    static boolean maskinlasbar = false;
+
+    // Laddeffekt för elbilen i --backtest (vanlig hemmaladdbox, 3-fas 16 A)
+    static final double STANDARD_LADDEFFEKT_KW = 11.0;
+
     static {
         nf.setMinimumFractionDigits(2);
         nf.setMaximumFractionDigits(2);
@@ -22,10 +31,16 @@ public class Main {
 
     public static void main(String[] args) {
 
+        // Med --format ska standard ut bara innehålla data, så API:ets statusmeddelanden går till System.err
+        maskinlasbar = List.of(args).contains("--format");
+        ElpriserAPI.setLoggStrom(maskinlasbar ? System.err : null);
+
         ElpriserAPI api = new ElpriserAPI();
 
         Locale.setDefault(Locale.of("sv", "SE"));
-        System.out.println("Hej och välkommen till Elpris-kollen");
+        if (!maskinlasbar) {
+            System.out.println("Hej och välkommen till Elpris-kollen");
+        }
 
         // Flaggor
         // valdZon = elområde, datumStr = valt datum, laddInput = laddningstid, sorteraFallande = true om --sorted används
@@ -33,6 +48,18 @@ public class Main {
         String datumStr = null;
         String laddInput = null;
         boolean sorteraFallande = false;
+        int antalDyraste = 0;
+        int antalBilligaste = 0;
+        String deladCacheFil = null;
+        String batteriInput = null;
+        long bevakningSekunder = 0;
+        String backtestInput = null;
+        String strategiInput = "window";
+        String ankomstInput = "18:00";
+        String avgangInput = "07:00";
+        String formatInput = null;
+        String tillStr = null;
+        int rullandeTimmar = 0;
 
         // giltiga zoner
         List<String> zoner = List.of("SE1", "SE2", "SE3", "SE4");
@@ -52,8 +79,32 @@ public class Main {
                 case "--date" -> { if (i+1 < args.length) datumStr = args[++i]; }
                 case "--charging" -> { if (i+1 < args.length) laddInput = args[++i]; }
                 case "--sorted" -> sorteraFallande = true;
+                case "--top" -> { if (i+1 < args.length) antalDyraste = parseAntal(args[++i]); }
+                case "--bottom" -> { if (i+1 < args.length) antalBilligaste = parseAntal(args[++i]); }
+                case "--shared-cache" -> { if (i+1 < args.length) deladCacheFil = args[++i]; }
+                case "--battery" -> { if (i+1 < args.length) batteriInput = args[++i]; }
+                case "--watch" -> {
+                    bevakningSekunder = 300;
+                    if (i+1 < args.length && args[i+1].matches("\\d+")) bevakningSekunder = Long.parseLong(args[++i]);
+                }
+                case "--backtest" -> { if (i+1 < args.length) backtestInput = args[++i]; }
+                case "--strategy" -> { if (i+1 < args.length) strategiInput = args[++i]; }
+                case "--arrival" -> { if (i+1 < args.length) ankomstInput = args[++i]; }
+                case "--departure" -> { if (i+1 < args.length) avgangInput = args[++i]; }
+                case "--format" -> { if (i+1 < args.length) formatInput = args[++i]; }
+                case "--to" -> { if (i+1 < args.length) tillStr = args[++i]; }
+                case "--rolling" -> { if (i+1 < args.length) rullandeTimmar = parseAntal(args[++i].replace("h", "")); }
                 case "--help" -> { helpMessage(); return; }
-                default -> System.out.println("Okänd flagga: " + arg);
+                default -> skrivFel("Okänd flagga: " + arg);
+            }
+        }
+
+        // delad cache mellan processer
+        if (deladCacheFil != null) {
+            try {
+                api.setDeladCache(DeladPrisCache.oppna(Path.of(deladCacheFil), 4096));
+            } catch (IOException e) {
+                skrivFel("Kunde inte öppna delad cache: " + deladCacheFil + " (" + e.getMessage() + ")");
             }
         }
 
@@ -63,29 +114,74 @@ public class Main {
             try {
                 datum = LocalDate.parse(datumStr);
             } catch (Exception e) {
-                System.out.println("Ogiltigt datum: " + datumStr);
+                skrivFel("Ogiltigt datum: " + datumStr);
                 return;
             }
         } else {
             datum = LocalDate.now();
         }
 
-        LocalDate imorgon = datum.plusDays(1);
+        // backtest av en laddstrategi över ett datumintervall, en zon eller alla
+        if (backtestInput != null) {
+            int laddTimmar = laddInput != null ? parseLaddning(laddInput) : 4;
+            backtest(api, backtestInput, valdZon, laddTimmar, strategiInput, ankomstInput, avgangInput);
+            return;
+        }
+
+        // alla zoner sida vid sida
+        if ("ALL".equalsIgnoreCase(valdZon)) {
+            ZonJamforelse.visa(api, datum);
+            return;
+        }
 
         // zon
         if (valdZon == null || !zoner.contains(valdZon.toUpperCase())) {
-            System.out.println("Ogiltig zon: " + valdZon);
-            helpMessage();
+            skrivFel("Ogiltig zon: " + valdZon);
+            if (!maskinlasbar) helpMessage();
             return;
         }
 
         ElpriserAPI.Prisklass zon = ElpriserAPI.Prisklass.valueOf(valdZon.toUpperCase());
 
-        List<ElpriserAPI.Elpris> priserIdag = api.getPriser(datum, zon);
-        List<ElpriserAPI.Elpris> priserImorgon = api.getPriser(imorgon, zon);
+        // maskinläsbar utdata (json/csv) direkt till standard ut
+        if (formatInput != null) {
+            MaskinUtdata.Format format = MaskinUtdata.tolkaFormat(formatInput);
+            if (format == null) {
+                System.err.println("Okänt format: " + formatInput + " (använd json eller csv)");
+                return;
+            }
+            LocalDate till = null;
+            if (tillStr != null) {
+                try {
+                    till = LocalDate.parse(tillStr);
+                } catch (Exception e) {
+                    System.err.println("Ogiltigt datum: " + tillStr);
+                    return;
+                }
+            }
+            skrivMaskinlasbart(api, format, zon, datum, till, laddInput, sorteraFallande, antalDyraste, antalBilligaste);
+            return;
+        }
+
+        // bevakning: ligger kvar och skriver bara ut det som ändras
+        if (bevakningSekunder > 0) {
+            int laddTimmar = laddInput != null ? parseLaddning(laddInput) : 0;
+            new Bevakning(api, zon, laddTimmar, LocalDate::now).kor(bevakningSekunder);
+            return;
+        }
 
-        if (priserIdag == null || priserIdag.isEmpty()) {
-            System.out.println("Ingen data tillgänglig / inga priser att visa");
+        // idag och imorgon hämtas samtidigt, så att missar går ut i samma våg
+        List<ElpriserAPI.Hamtning> dagar = api.hamtaDagar(datum, 2, zon);
+        ElpriserAPI.Hamtning idag = dagar.get(0);
+        List<ElpriserAPI.Elpris> priserIdag = idag.priser();
+        List<ElpriserAPI.Elpris> priserImorgon = dagar.get(1).priser();
+
+        if (priserIdag.isEmpty()) {
+            switch (idag.status()) {
+                case TIDSGRANS -> System.out.println("Elpris-API:et svarade inte i tid, försök igen senare");
+                case FEL -> System.out.println("Kunde inte hämta priser, försök igen senare");
+                default -> System.out.println("Ingen data tillgänglig / inga priser att visa");
+            }
             return;
         }
 
@@ -95,65 +191,155 @@ public class Main {
 
         // kolla om laddningsfönster behövs
         if (laddInput != null) {
-            int timmar = 0;
-            try {
-                timmar = Integer.parseInt(laddInput.replace("h", ""));
-            } catch (NumberFormatException e) {
-                System.out.println("Fel på laddningsinput: " + laddInput);
-            }
+            int timmar = parseLaddning(laddInput);
             if (timmar > 0) {
-                cheapestCharging(allaPriser, timmar);
+                int antalTimmar = timmar;
+                skrivLaddfonster(api.harlett(datum, zon, dagar, List.of("laddning", antalTimmar),
+                        lista -> beraknaLaddfonster(lista, antalTimmar)), antalTimmar);
                 return;
             }
         }
 
-        // sortering
+        // hembatteri: när ska det laddas och laddas ur
+        if (batteriInput != null) {
+            BatteriOptimerare.Batteri batteri = parseBatteri(batteriInput);
+            if (batteri != null) {
+                batteriSchema(allaPriser, batteri);
+            }
+            return;
+        }
+
+        // rullande min/max/medel för varje intervall
+        if (rullandeTimmar > 0) {
+            skrivRullande(allaPriser, rullandeTimmar);
+            return;
+        }
+
+        // topp/botten N och sortering sker på index över en primitiv prisarray
+        if (antalDyraste > 0 || antalBilligaste > 0) {
+            double[] priser = PrisRangordning.priser(allaPriser);
+            if (antalDyraste > 0) {
+                System.out.println("Dyraste " + antalDyraste + ":");
+                printPrices(allaPriser, PrisRangordning.dyraste(priser, antalDyraste));
+            }
+            if (antalBilligaste > 0) {
+                System.out.println("Billigaste " + antalBilligaste + ":");
+                printPrices(allaPriser, PrisRangordning.billigaste(priser, antalBilligaste));
+            }
+            return;
+        }
+
         if (sorteraFallande) {
-            allaPriser.sort(Comparator.comparing(ElpriserAPI.Elpris::sekPerKWh).reversed());
-            printPrices(allaPriser);
+            printPrices(allaPriser, PrisRangordning.sorteraFallande(PrisRangordning.priser(allaPriser)));
             return;
         }
 
         // annars visa vanliga
+        // Statistiken hämtas via api.harlett så att samma fråga mot samma data bara beräknas en gång
         if (allaPriser.size() == 96) {
-            displayHourlyPrices(allaPriser);
+            skrivTimpriser(api.harlett(datum, zon, dagar, "timmedel", Main::beraknaTimmedel));
         } else {
             printPrices(allaPriser);
         }
 
-        minMax(priserIdag);
-        avgPrice(priserIdag);
+        skrivMinMax(api.harlett(datum, zon, dagar.subList(0, 1), "minMax", Main::beraknaMinMax));
+        skrivMedelpris(api.harlett(datum, zon, dagar.subList(0, 1), "medelpris", Main::beraknaMedelpris));
     }
 
+    // Beräknade resultat, så att de kan sparas och återanvändas
+    record Laddfonster(String tid, double snittPris) {}
+    record MinMax(double minPris, String minTid, double maxPris, String maxTid) {}
+
 
     // Visar elpriser aggregerat till hela timmar
     // Tar en lista med 96 kvartstimmar och slår ihop dem 4 och 4 till 24 timmar
     static void displayHourlyPrices(List<ElpriserAPI.Elpris> priceIntervals) {
+        skrivTimpriser(beraknaTimmedel(priceIntervals));
+    }
+
+    // Medelpris per timme, null om det inte finns någon data
+    static double[] beraknaTimmedel(List<ElpriserAPI.Elpris> priceIntervals) {
         if (priceIntervals == null || priceIntervals.isEmpty()) {
+            return null;
+        }
+        double[] timmedel = new double[priceIntervals.size() / 4];
+        for (int i = 0; i + 4 <= priceIntervals.size(); i += 4) {
+            double sum = 0;
+            for (int j = i; j < i + 4; j++) sum += priceIntervals.get(j).sekPerKWh();
+            timmedel[i / 4] = sum / 4.0;
+        }
+        return timmedel;
+    }
+
+    static void skrivTimpriser(double[] timmedel) {
+        if (timmedel == null) {
             System.out.println("Ingen data för 96-priser");
             return;
         }
-
-        for (int i = 0; i < priceIntervals.size(); i += 4) {
-            List<ElpriserAPI.Elpris> kvart = priceIntervals.subList(i, i + 4);
-
-            double sum = kvart.stream().mapToDouble(ElpriserAPI.Elpris::sekPerKWh).sum();
-            double medel = sum / 4.0;
-
-            int timme = i / 4;
+        for (int timme = 0; timme < timmedel.length; timme++) {
             int timme2 = (timme + 1) % 24;
-
             String tidspann = String.format("%02d-%02d", timme, timme2);
-            System.out.printf("%s %s öre%n", tidspann, nf.format(medel * 100));
+            System.out.printf("%s %s öre%n", tidspann, nf.format(timmedel[timme] * 100));
         }
     }
     // Skriver ut alla priser i listan med starttid, sluttid och pris i öre
     static void printPrices(List<ElpriserAPI.Elpris> lista) {
         for (ElpriserAPI.Elpris pris : lista) {
-            System.out.printf("%s-%s %s öre%n",
-                    pris.timeStart().format(timFormatter),
-                    pris.timeEnd().format(timFormatter),
-                    nf.format(pris.sekPerKWh() * 100));
+            printPris(pris);
+        }
+    }
+
+    // Skriver ut priserna i den ordning som index-permutationen anger
+    static void printPrices(List<ElpriserAPI.Elpris> lista, int[] ordning) {
+        for (int index : ordning) {
+            printPris(lista.get(index));
+        }
+    }
+
+    static void printPris(ElpriserAPI.Elpris pris) {
+        System.out.printf("%s-%s %s öre%n",
+                Tider.timme(pris.timeStart()),
+                Tider.timme(pris.timeEnd()),
+                nf.format(pris.sekPerKWh() * 100));
+    }
+
+    // Skriver min, max och medel för fönstret på `timmar` timmar som slutar i varje intervall
+    static void skrivRullande(List<ElpriserAPI.Elpris> lista, int timmar) {
+        int fonster = (int) Math.max(1, timmar * 3600L / Tider.intervallSekunder(lista));
+        RullandeStatistik statistik = new RullandeStatistik(fonster);
+        System.out.println("Rullande " + timmar + "h:");
+        for (int i = 0; i < lista.size(); i++) {
+            statistik.lagg(lista.get(i).sekPerKWh());
+            System.out.printf("%s min %s max %s medel %s öre%n",
+                    Tider.minut(lista.get(i).timeStart()),
+                    nf.format(statistik.min(i) * 100),
+                    nf.format(statistik.max(i) * 100),
+                    nf.format(statistik.medel(i) * 100));
+        }
+    }
+
+    // Felmeddelande till System.err med --format, annars till System.out som tidigare
+    static void skrivFel(String meddelande) {
+        (maskinlasbar ? System.err : System.out).println(meddelande);
+    }
+
+    // Tolkar laddningstiden, t.ex. "4h". 0 om den inte går att tolka.
+    static int parseLaddning(String laddInput) {
+        try {
+            return Integer.parseInt(laddInput.replace("h", ""));
+        } catch (NumberFormatException e) {
+            skrivFel("Fel på laddningsinput: " + laddInput);
+            return 0;
+        }
+    }
+
+    // Tolkar antalet för --top/--bottom, 0 betyder att flaggan ignoreras
+    static int parseAntal(String input) {
+        try {
+            return Integer.parseInt(input);
+        } catch (NumberFormatException e) {
+            skrivFel("Ogiltigt antal: " + input);
+            return 0;
         }
     }
 
@@ -161,9 +347,13 @@ public class Main {
     // Går igenom listan av elpriser och beräknar vilket startindex som ger lägst genomsnittspris
 
     static void cheapestCharging(List<ElpriserAPI.Elpris> lista, int timmar) {
+        skrivLaddfonster(beraknaLaddfonster(lista, timmar), timmar);
+    }
+
+    // Null om det finns för lite data för ett fönster av den längden
+    static Laddfonster beraknaLaddfonster(List<ElpriserAPI.Elpris> lista, int timmar) {
         if (lista == null || lista.size() < timmar) {
-            System.out.println("För lite data för laddning.");
-            return;
+            return null;
         }
 
         double bestHour = Double.MAX_VALUE;
@@ -180,24 +370,233 @@ public class Main {
             }
         }
 
-        if (start >= 0) {
-            DateTimeFormatter minutFormatter = DateTimeFormatter.ofPattern("HH:mm");
-            String tid = lista.get(start).timeStart().format(minutFormatter);
-            double snittPris = bestHour / timmar * 100;
+        if (start < 0) {
+            return null;
+        }
+        String tid = Tider.minut(lista.get(start).timeStart());
+        return new Laddfonster(tid, bestHour / timmar * 100);
+    }
 
-            System.out.printf(
-                    "Billigaste %dh startar kl %s%nMedelpris för fönster: %s öre%nPåbörja laddning %s%n",
-                    timmar, tid, nf.format(snittPris), tid
-            );
+    static void skrivLaddfonster(Laddfonster fonster, int timmar) {
+        if (fonster == null) {
+            System.out.println("För lite data för laddning.");
+            return;
+        }
+        System.out.printf(
+                "Billigaste %dh startar kl %s%nMedelpris för fönster: %s öre%nPåbörja laddning %s%n",
+                timmar, fonster.tid(), nf.format(fonster.snittPris()), fonster.tid()
+        );
+    }
+
+    // Optimerar batteriet över hela prisserien och skriver ut alla intervall där det laddas eller laddas ur
+    static void batteriSchema(List<ElpriserAPI.Elpris> lista, BatteriOptimerare.Batteri batteri) {
+        double timmar = Tider.intervallSekunder(lista) / 3600.0;
+        BatteriOptimerare.Resultat resultat = BatteriOptimerare.optimera(
+                PrisRangordning.priser(lista), timmar, batteri, BatteriOptimerare.STANDARD_STEG);
+
+        for (int i = 0; i < lista.size(); i++) {
+            double kwh = resultat.natKWh()[i];
+            if (Math.abs(kwh) < 1e-9) continue;
+            System.out.printf("%s %s %s kWh (nivå %s kWh)%n",
+                    Tider.minut(lista.get(i).timeStart()),
+                    kwh > 0 ? "Ladda" : "Ladda ur",
+                    nf.format(Math.abs(kwh)),
+                    nf.format(resultat.nivaKWh()[i]));
+        }
+        System.out.printf("Vinst för batteriet: %s kr%n", nf.format(resultat.vinstSek()));
+    }
+
+    // --format: samma resultat som textläget, men som json/csv-rader. Med --to strömmas alla priser
+    // i intervallet dag för dag via forEachPris, följt av min, max och medel för hela intervallet.
+    static void skrivMaskinlasbart(ElpriserAPI api, MaskinUtdata.Format format, ElpriserAPI.Prisklass zon,
+                                   LocalDate datum, LocalDate till, String laddInput, boolean sortera,
+                                   int antalDyraste, int antalBilligaste) {
+        MaskinUtdata ut = new MaskinUtdata(format, System.out);
+        try (ut) {
+            if (till != null) {
+                skrivIntervall(api, ut, zon, datum, till);
+                return;
+            }
+
+            List<ElpriserAPI.Hamtning> dagar = api.hamtaDagar(datum, 2, zon);
+            ElpriserAPI.Hamtning idag = dagar.get(0);
+            if (idag.priser().isEmpty()) {
+                switch (idag.status()) {
+                    case TIDSGRANS -> System.err.println("Elpris-API:et svarade inte i tid, försök igen senare");
+                    case FEL -> System.err.println("Kunde inte hämta priser, försök igen senare");
+                    default -> System.err.println("Ingen data tillgänglig / inga priser att visa");
+                }
+                return;
+            }
+            List<ElpriserAPI.Elpris> allaPriser = new ArrayList<>(idag.priser());
+            allaPriser.addAll(dagar.get(1).priser());
+
+            if (laddInput != null) {
+                int timmar = parseLaddning(laddInput);
+                if (timmar > 0) {
+                    LopandeStatistik statistik = new LopandeStatistik(timmar);
+                    allaPriser.forEach(p -> statistik.lagg(p.sekPerKWh()));
+                    int start = statistik.laddfonsterStart();
+                    if (start < 0) {
+                        System.err.println("För lite data för laddning.");
+                    } else {
+                        ut.varde("laddfonster", allaPriser.get(start).timeStart(),
+                                allaPriser.get(start + timmar - 1).timeEnd(), statistik.laddfonsterMedel());
+                    }
+                    return;
+                }
+            }
+
+            if (antalDyraste > 0 || antalBilligaste > 0) {
+                double[] priser = PrisRangordning.priser(allaPriser);
+                for (int index : PrisRangordning.dyraste(priser, antalDyraste)) ut.pris("dyraste", allaPriser.get(index));
+                for (int index : PrisRangordning.billigaste(priser, antalBilligaste)) ut.pris("billigaste", allaPriser.get(index));
+                return;
+            }
+
+            if (sortera) {
+                for (int index : PrisRangordning.sorteraFallande(PrisRangordning.priser(allaPriser))) {
+                    ut.pris(allaPriser.get(index));
+                }
+                return;
+            }
+
+            allaPriser.forEach(ut::pris);
+            if (Tider.intervallSekunder(allaPriser) == 900) {
+                double[] timmedel = api.harlett(datum, zon, dagar, "timmedel", Main::beraknaTimmedel);
+                for (int timme = 0; timmedel != null && timme < timmedel.length; timme++) {
+                    ut.varde("timmedel", allaPriser.get(timme * 4).timeStart(), allaPriser.get(timme * 4 + 3).timeEnd(), timmedel[timme]);
+                }
+            }
+
+            List<ElpriserAPI.Elpris> dag = idag.priser();
+            LopandeStatistik statistik = new LopandeStatistik(0);
+            dag.forEach(p -> statistik.lagg(p.sekPerKWh()));
+            ElpriserAPI.Elpris min = dag.get(statistik.minIndex());
+            ElpriserAPI.Elpris max = dag.get(statistik.maxIndex());
+            ut.varde("min", min.timeStart(), min.timeEnd(), statistik.min());
+            ut.varde("max", max.timeStart(), max.timeEnd(), statistik.max());
+            ut.varde("medel", dag.get(0).timeStart(), dag.get(dag.size() - 1).timeEnd(), statistik.medel());
+        }
+        if (ut.harFel()) {
+            System.err.println("Kunde inte skriva utdata");
+        }
+    }
+
+    // Strömmar alla priser från datum till och med till, utan att hålla dem i minnet
+    private static void skrivIntervall(ElpriserAPI api, MaskinUtdata ut, ElpriserAPI.Prisklass zon, LocalDate datum, LocalDate till) {
+        LopandeStatistik statistik = new LopandeStatistik(0);
+        // start, startOffset, slut, slutOffset för min, max och hela intervallet
+        long[] minTid = new long[4], maxTid = new long[4], heltTid = new long[4];
+        for (LocalDate dag = datum; !dag.isAfter(till); dag = dag.plusDays(1)) {
+            api.forEachPris(dag, zon, (start, startOffset, slut, slutOffset, sek, eur, exr) -> {
+                ut.pris(start, startOffset, slut, slutOffset, sek, eur, exr);
+                statistik.lagg(sek);
+                int index = statistik.antal() - 1;
+                if (index == 0) { heltTid[0] = start; heltTid[1] = startOffset; }
+                heltTid[2] = slut; heltTid[3] = slutOffset;
+                if (statistik.minIndex() == index) { minTid[0] = start; minTid[1] = startOffset; minTid[2] = slut; minTid[3] = slutOffset; }
+                if (statistik.maxIndex() == index) { maxTid[0] = start; maxTid[1] = startOffset; maxTid[2] = slut; maxTid[3] = slutOffset; }
+            });
+        }
+        if (statistik.antal() == 0) {
+            System.err.println("Ingen data tillgänglig / inga priser att visa");
+            return;
+        }
+        ut.varde("min", minTid[0], (int) minTid[1], minTid[2], (int) minTid[3], statistik.min());
+        ut.varde("max", maxTid[0], (int) maxTid[1], maxTid[2], (int) maxTid[3], statistik.max());
+        ut.varde("medel", heltTid[0], (int) heltTid[1], heltTid[2], (int) heltTid[3], statistik.medel());
+    }
+
+    // Kör --backtest FRÅN:TILL och skriver besparingen mot laddning vid ankomst per zon och år
+    static void backtest(ElpriserAPI api, String intervall, String valdZon, int laddTimmar,
+                         String strategiInput, String ankomstInput, String avgangInput) {
+        LocalDate fran, till;
+        LocalTime ankomst, avgang;
+        try {
+            String[] delar = intervall.split(":");
+            fran = LocalDate.parse(delar[0]);
+            till = LocalDate.parse(delar[1]);
+            ankomst = LocalTime.parse(ankomstInput);
+            avgang = LocalTime.parse(avgangInput);
+        } catch (RuntimeException e) {
+            System.out.println("Fel på backtest-input: " + intervall + " (använd FRÅN:TILL, t.ex. 2024-01-01:2024-12-31)");
+            return;
+        }
+        if (till.isBefore(fran) || laddTimmar <= 0) {
+            System.out.println("Fel på backtest-input: " + intervall);
+            return;
+        }
+
+        Backtest.Strategi strategi;
+        switch (strategiInput) {
+            case "window" -> strategi = new Backtest.Sammanhangande();
+            case "split" -> strategi = new Backtest.DeladBilligast();
+            default -> {
+                try {
+                    strategi = new Backtest.FastTid(LocalTime.parse(strategiInput));
+                } catch (RuntimeException e) {
+                    System.out.println("Okänd strategi: " + strategiInput + " (använd window, split eller HH:mm)");
+                    return;
+                }
+            }
+        }
+
+        List<ElpriserAPI.Prisklass> zoner;
+        if ("ALL".equalsIgnoreCase(valdZon)) {
+            zoner = List.of(ElpriserAPI.Prisklass.values());
+        } else {
+            try {
+                zoner = List.of(ElpriserAPI.Prisklass.valueOf(valdZon.toUpperCase()));
+            } catch (RuntimeException e) {
+                System.out.println("Ogiltig zon: " + valdZon);
+                return;
+            }
+        }
+
+        Backtest.Historik historik = Backtest.ladda(api::getPriser, zoner, fran, till);
+        Backtest.Laddbehov behov = new Backtest.Laddbehov(ankomst, avgang, laddTimmar, STANDARD_LADDEFFEKT_KW);
+        Map<ElpriserAPI.Prisklass, Map<Integer, Backtest.Fordelning>> resultat = Backtest.kor(historik, behov, strategi);
+
+        System.out.printf("Backtest %s–%s, %dh à %s kW mellan %s och %s, strategi %s%n",
+                fran, till, laddTimmar, nf.format(STANDARD_LADDEFFEKT_KW), ankomst, avgang, strategiInput);
+        for (var zon : resultat.entrySet()) {
+            if (zon.getValue().isEmpty()) {
+                System.out.println(zon.getKey() + ": ingen data");
+                continue;
+            }
+            for (var ar : zon.getValue().entrySet()) {
+                Backtest.Fordelning f = ar.getValue();
+                System.out.printf("%s %d: %d dagar, sparat %s kr (per dag: medel %s, p10 %s, median %s, p90 %s kr)%n",
+                        zon.getKey(), ar.getKey(), f.dagar(), nf.format(f.summa()), nf.format(f.medel()),
+                        nf.format(f.p10()), nf.format(f.median()), nf.format(f.p90()));
+            }
+        }
+    }
+
+    // Tolkar "kapacitet:effekt:verkningsgrad", t.ex. 10:5:0.9
+    static BatteriOptimerare.Batteri parseBatteri(String input) {
+        try {
+            String[] delar = input.split(":");
+            return new BatteriOptimerare.Batteri(
+                    Double.parseDouble(delar[0]),
+                    Double.parseDouble(delar[1]),
+                    delar.length > 2 ? Double.parseDouble(delar[2]) : 0.9);
+        } catch (RuntimeException e) {
+            System.out.println("Fel på batteriinput: " + input + " (använd kapacitet:effekt:verkningsgrad, t.ex. 10:5:0.9)");
+            return null;
         }
     }
 
     // Hittar och skriver ut det lägsta och högsta elpriset i listan
     // Jämför varje pris och sparar tidpunkten för när det är billigast/dyrast
     static void minMax(List<ElpriserAPI.Elpris> lista) {
+        skrivMinMax(beraknaMinMax(lista));
+    }
+
+    static MinMax beraknaMinMax(List<ElpriserAPI.Elpris> lista) {
         if (lista == null || lista.isEmpty()) {
-            System.out.println("Ingen data");
-            return;
+            return null;
         }
 
         double minPrice = Double.MAX_VALUE, maxPris = Double.MIN_VALUE;
@@ -205,23 +604,41 @@ public class Main {
 
         for (ElpriserAPI.Elpris p : lista) {
             double v = p.sekPerKWh();
-            if (v < minPrice) { minPrice = v; minTid = p.timeStart().format(timFormatter); }
-            if (v > maxPris) { maxPris = v; maxTid = p.timeStart().format(timFormatter); }
+            if (v < minPrice) { minPrice = v; minTid = Tider.timme(p.timeStart()); }
+            if (v > maxPris) { maxPris = v; maxTid = Tider.timme(p.timeStart()); }
         }
 
-        System.out.printf("Lägsta pris: %s öre Kl: %s%n", nf.format(minPrice * 100), minTid);
-        System.out.printf("Högsta pris: %s öre Kl: %s%n", nf.format(maxPris * 100), maxTid);
+        return new MinMax(minPrice, minTid, maxPris, maxTid);
+    }
+
+    static void skrivMinMax(MinMax minMax) {
+        if (minMax == null) {
+            System.out.println("Ingen data");
+            return;
+        }
+        System.out.printf("Lägsta pris: %s öre Kl: %s%n", nf.format(minMax.minPris() * 100), minMax.minTid());
+        System.out.printf("Högsta pris: %s öre Kl: %s%n", nf.format(minMax.maxPris() * 100), minMax.maxTid());
     }
 
     // Beräknar och skriver ut medelpriset för alla elpriser i listan
     static void avgPrice(List<ElpriserAPI.Elpris> lista) {
+        skrivMedelpris(beraknaMedelpris(lista));
+    }
+
+    static Double beraknaMedelpris(List<ElpriserAPI.Elpris> lista) {
         if (lista == null || lista.isEmpty()) {
-            System.out.println("Ingen data för medelpris");
-            return;
+            return null;
         }
         double sum = 0;
         for (ElpriserAPI.Elpris p : lista) sum += p.sekPerKWh();
-        double medel = sum / lista.size();
+        return sum / lista.size();
+    }
+
+    static void skrivMedelpris(Double medel) {
+        if (medel == null) {
+            System.out.println("Ingen data för medelpris");
+            return;
+        }
         System.out.printf("Medelpris: %s öre%n", nf.format(medel*100));
     }
 
@@ -234,10 +651,22 @@ Usage:
   java -cp target/classes com.example.Main
 
 Alternativ:
-  --zone SE1|SE2|SE3|SE4   (obligatorisk)
+  --zone SE1|SE2|SE3|SE4|ALL   (obligatorisk, ALL jämför alla zoner)
   --date YYYY-MM-DD        (valfri)
   --charging 2h|4h|8h      (valfri)
   --sorted                 (valfri)
+  --top N                  (valfri, de N dyraste intervallen)
+  --bottom N               (valfri, de N billigaste intervallen)
+  --shared-cache FIL       (valfri, cachefil som delas mellan processer)
+  --battery 10:5:0.9       (valfri, kapacitet kWh:effekt kW:verkningsgrad, visar schema och vinst)
+  --watch [sekunder]       (valfri, ligger kvar och visar bara ändringar, standard var 300:e sekund)
+  --rolling 3h             (valfri, rullande min/max/medel över fönstret för varje intervall)
+  --backtest FRÅN:TILL     (valfri, t.ex. 2024-01-01:2024-12-31, besparing mot laddning vid ankomst)
+  --strategy window|split|HH:mm  (för --backtest, standard window)
+  --arrival HH:mm          (för --backtest, standard 18:00)
+  --departure HH:mm        (för --backtest, standard 07:00)
+  --format json|csv        (valfri, maskinläsbar utdata med ISO-tider och SEK/kWh)
+  --to YYYY-MM-DD          (för --format, alla priser från --date till och med detta datum)
   --help                   (denna text)
 """);
     }
@@ -248,5 +677,12 @@ Alternativ:
 java -cp target/classes com.example.Main --zone SE3 --date 2025-09-04
 java -cp target/classes com.example.Main --zone SE1 --charging 4h
 java -cp target/classes com.example.Main --zone SE2 --date 2025-09-04 --sorted
+java -cp target/classes com.example.Main --zone SE4 --top 5 --bottom 5
+java --enable-preview -cp target/classes com.example.Main --zone ALL --date 2025-09-04
+java -cp target/classes com.example.Main --zone SE4 --battery 10:5:0.9
+java -cp target/classes com.example.Main --zone SE3 --charging 4h --watch 60
+java -cp target/classes com.example.Main --zone ALL --backtest 2024-01-01:2024-12-31 --charging 4h --strategy split
+java -cp target/classes com.example.Main --zone SE1 --rolling 3h
+java -cp target/classes com.example.Main --zone SE3 --date 2024-01-01 --to 2024-12-31 --format csv > se3-2024.csv
 java -cp target/classes com.example.Main --help
  */
\ No newline at end of file
@@ -0,0 +1,193 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+/**
+ * --format json|csv: skriver resultat som maskinläsbara rader direkt till en buffrad ström.
+ * Varje rad har en typ ("pris", "timmedel", "min", "max", "medel", "laddfonster", ...),
+ * start och slut som ISO-tider med offset och priset i SEK/kWh med fast antal decimaler.
+ * Bara prisrader har EUR och växelkurs. Varje fält skrivs med lika många decimaler som API:et ger,
+ * så inget avrundas bort. Inget hålls kvar i minnet utöver skrivbufferten.
+ *
+ * <p>JSON blir en array med ett objekt per rad, CSV har en rubrikrad. Skrivfel sparas som i
+ * {@link java.io.PrintStream} och kan kollas med {@link #harFel()}.</p>
+ */
+final class MaskinUtdata implements AutoCloseable {
+
+    enum Format { JSON, CSV }
+
+    // Samma upplösning som API:et: 5 decimaler för priser, 6 för växelkursen
+    private static final int PRIS_DECIMALER = 5;
+    private static final int EXR_DECIMALER = 6;
+
+    private final Format format;
+    private final Writer ut;
+    private boolean forstaRaden = true;
+    private boolean fel;
+
+    MaskinUtdata(Format format, OutputStream strom) {
+        this.format = format;
+        this.ut = new BufferedWriter(new OutputStreamWriter(strom, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            ut.write(format == Format.JSON ? "[" : "typ,start,slut,sek_per_kwh,eur_per_kwh,exr\n");
+        } catch (IOException e) {
+            fel = true;
+        }
+    }
+
+    // Tolkar värdet för --format, null om det är okänt
+    static Format tolkaFormat(String input) {
+        return switch (input.toLowerCase()) {
+            case "json" -> Format.JSON;
+            case "csv" -> Format.CSV;
+            default -> null;
+        };
+    }
+
+    void pris(ElpriserAPI.Elpris p) {
+        pris("pris", p);
+    }
+
+    void pris(String typ, ElpriserAPI.Elpris p) {
+        pris(typ, p.timeStart().toEpochSecond(), p.timeStart().getOffset().getTotalSeconds(),
+                p.timeEnd().toEpochSecond(), p.timeEnd().getOffset().getTotalSeconds(),
+                p.sekPerKWh(), p.eurPerKWh(), p.exr());
+    }
+
+    // Passar som ElpriserAPI.PrisKonsument, så att priser kan skrivas utan Elpris-objekt
+    void pris(long start, int startOffset, long slut, int slutOffset, double sek, double eur, double exr) {
+        pris("pris", start, startOffset, slut, slutOffset, sek, eur, exr);
+    }
+
+    void pris(String typ, long start, int startOffset, long slut, int slutOffset, double sek, double eur, double exr) {
+        rad(typ, start, startOffset, slut, slutOffset, sek, eur, exr, true);
+    }
+
+    // En beräknad rad (timmedel, min, max, medel, laddfönster) utan EUR och växelkurs
+    void varde(String typ, ZonedDateTime start, ZonedDateTime slut, double sek) {
+        varde(typ, start.toEpochSecond(), start.getOffset().getTotalSeconds(),
+                slut.toEpochSecond(), slut.getOffset().getTotalSeconds(), sek);
+    }
+
+    void varde(String typ, long start, int startOffset, long slut, int slutOffset, double sek) {
+        rad(typ, start, startOffset, slut, slutOffset, sek, Double.NaN, Double.NaN, false);
+    }
+
+    boolean harFel() {
+        return fel;
+    }
+
+    // Avslutar JSON-arrayen och tömmer bufferten. Den underliggande strömmen stängs inte.
+    @Override
+    public void close() {
+        try {
+            if (format == Format.JSON) {
+                ut.write(forstaRaden ? "]\n" : "\n]\n");
+            }
+            ut.flush();
+        } catch (IOException e) {
+            fel = true;
+        }
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    private void rad(String typ, long start, int startOffset, long slut, int slutOffset,
+                     double sek, double eur, double exr, boolean medEur) {
+        try {
+            if (format == Format.JSON) {
+                ut.write(forstaRaden ? "\n{\"typ\":\"" : ",\n{\"typ\":\"");
+                ut.write(typ);
+                ut.write("\",\"start\":\"");
+                skrivTid(start, startOffset);
+                ut.write("\",\"slut\":\"");
+                skrivTid(slut, slutOffset);
+                ut.write("\",\"sek_per_kwh\":");
+                skrivTal(sek, PRIS_DECIMALER, "null");
+                if (medEur) {
+                    ut.write(",\"eur_per_kwh\":");
+                    skrivTal(eur, PRIS_DECIMALER, "null");
+                    ut.write(",\"exr\":");
+                    skrivTal(exr, EXR_DECIMALER, "null");
+                }
+                ut.write('}');
+            } else {
+                ut.write(typ);
+                ut.write(',');
+                skrivTid(start, startOffset);
+                ut.write(',');
+                skrivTid(slut, slutOffset);
+                ut.write(',');
+                skrivTal(sek, PRIS_DECIMALER, "");
+                ut.write(',');
+                if (medEur) skrivTal(eur, PRIS_DECIMALER, "");
+                ut.write(',');
+                if (medEur) skrivTal(exr, EXR_DECIMALER, "");
+                ut.write('\n');
+            }
+            forstaRaden = false;
+        } catch (IOException e) {
+            fel = true;
+        }
+    }
+
+    // yyyy-MM-ddTHH:mm:ss+HH:MM, samma form som API:et
+    private void skrivTid(long epochSekund, int offsetSekunder) throws IOException {
+        long lokal = epochSekund + offsetSekunder;
+        LocalDate dag = LocalDate.ofEpochDay(Math.floorDiv(lokal, 86400));
+        int sekundPaDygnet = Math.floorMod(lokal, 86400);
+        skrivSiffror(dag.getYear(), 4);
+        ut.write('-');
+        skrivSiffror(dag.getMonthValue(), 2);
+        ut.write('-');
+        skrivSiffror(dag.getDayOfMonth(), 2);
+        ut.write('T');
+        skrivSiffror(sekundPaDygnet / 3600, 2);
+        ut.write(':');
+        skrivSiffror(sekundPaDygnet / 60 % 60, 2);
+        ut.write(':');
+        skrivSiffror(sekundPaDygnet % 60, 2);
+        ut.write(offsetSekunder < 0 ? '-' : '+');
+        int offset = Math.abs(offsetSekunder);
+        skrivSiffror(offset / 3600, 2);
+        ut.write(':');
+        skrivSiffror(offset / 60 % 60, 2);
+    }
+
+    // Fast antal decimaler med punkt, oberoende av locale
+    private void skrivTal(double v, int decimaler, String saknas) throws IOException {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            ut.write(saknas);
+            return;
+        }
+        long skala = pow10(decimaler);
+        long skalat = Math.round(Math.abs(v) * skala);
+        if (v < 0 && skalat != 0) {
+            ut.write('-');
+        }
+        ut.write(Long.toString(skalat / skala));
+        ut.write('.');
+        skrivSiffror(skalat % skala, decimaler);
+    }
+
+    private void skrivSiffror(long v, int antal) throws IOException {
+        for (long d = pow10(antal - 1); d > 0; d /= 10) {
+            ut.write((char) ('0' + v / d % 10));
+        }
+    }
+
+    private static long pow10(int n) {
+        long v = 1;
+        for (int i = 0; i < n; i++) v *= 10;
+        return v;
+    }
+}
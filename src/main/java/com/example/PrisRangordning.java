@@ -0,0 +1,144 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+
+import java.util.List;
+
+/**
+ * Rangordning av priser utan boxning.
+ * Arbetar direkt på en primitiv double[] och returnerar en int[]-permutation med index
+ * till ursprungslistan. Vid lika pris vinner alltid det tidigaste intervallet.
+ */
+public final class PrisRangordning {
+
+    private PrisRangordning() {
+    }
+
+    // Plockar ut sekPerKWh till en primitiv array, en gång per lista
+    public static double[] priser(List<ElpriserAPI.Elpris> lista) {
+        double[] v = new double[lista.size()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = lista.get(i).sekPerKWh();
+        }
+        return v;
+    }
+
+    /**
+     * Full sortering av index, dyraste först. Stabil: lika priser behåller sin ursprungliga ordning.
+     */
+    public static int[] sorteraFallande(double[] v) {
+        return sortera(v, true);
+    }
+
+    /**
+     * Full sortering av index, billigaste först. Stabil: lika priser behåller sin ursprungliga ordning.
+     */
+    public static int[] sorteraStigande(double[] v) {
+        return sortera(v, false);
+    }
+
+    /**
+     * De n dyraste intervallen, dyraste först.
+     * Använder en begränsad heap med n platser, dvs O(len · log n) i stället för en full sortering.
+     */
+    public static int[] dyraste(double[] v, int n) {
+        return urval(v, n, true);
+    }
+
+    /**
+     * De n billigaste intervallen, billigaste först.
+     */
+    public static int[] billigaste(double[] v, int n) {
+        return urval(v, n, false);
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    // true om index a ska stå före index b i resultatet
+    private static boolean fore(double[] v, int a, int b, boolean fallande) {
+        int c = Double.compare(v[a], v[b]);
+        if (c != 0) {
+            return fallande ? c > 0 : c < 0;
+        }
+        return a < b;
+    }
+
+    // Bottom-up mergesort på index. Stabil och utan Comparator/boxning.
+    private static int[] sortera(double[] v, boolean fallande) {
+        int n = v.length;
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        return sorteraIndex(v, a, fallande);
+    }
+
+    private static int[] sorteraIndex(double[] v, int[] a, boolean fallande) {
+        int n = a.length;
+        int[] b = new int[n];
+        for (int bredd = 1; bredd < n; bredd *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * bredd) {
+                int mid = Math.min(lo + bredd, n);
+                int hi = Math.min(lo + 2 * bredd, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    b[k++] = fore(v, a[j], a[i], fallande) ? a[j++] : a[i++];
+                }
+                while (i < mid) b[k++] = a[i++];
+                while (j < hi) b[k++] = a[j++];
+            }
+            int[] tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return a;
+    }
+
+    // Håller de n "bästa" indexen i en heap där roten är den sämsta av de behållna
+    private static int[] urval(double[] v, int n, boolean fallande) {
+        if (n <= 0 || v.length == 0) {
+            return new int[0];
+        }
+        if (n >= v.length) {
+            return sortera(v, fallande);
+        }
+
+        int[] heap = new int[n];
+        int storlek = 0;
+        for (int i = 0; i < v.length; i++) {
+            if (storlek < n) {
+                heap[storlek] = i;
+                uppat(v, heap, storlek++, fallande);
+            } else if (fore(v, i, heap[0], fallande)) {
+                heap[0] = i;
+                nedat(v, heap, 0, storlek, fallande);
+            }
+        }
+        return sorteraIndex(v, heap, fallande);
+    }
+
+    // Heapordning: föräldern är "sämre" (dvs ska stå efter) än sina barn
+    private static void uppat(double[] v, int[] heap, int pos, boolean fallande) {
+        int x = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!fore(v, heap[parent], x, fallande)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = x;
+    }
+
+    private static void nedat(double[] v, int[] heap, int pos, int storlek, boolean fallande) {
+        int x = heap[pos];
+        while (true) {
+            int barn = 2 * pos + 1;
+            if (barn >= storlek) break;
+            if (barn + 1 < storlek && fore(v, heap[barn], heap[barn + 1], fallande)) {
+                barn++;
+            }
+            if (!fore(v, x, heap[barn], fallande)) break;
+            heap[pos] = heap[barn];
+            pos = barn;
+        }
+        heap[pos] = x;
+    }
+}
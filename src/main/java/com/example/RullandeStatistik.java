@@ -0,0 +1,110 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Rullande min, max och medel över ett fönster av fast längd, för varje intervall i serien.
+ * Min och max hålls med monotona köer (index i ringbuffertar): varje index läggs till och tas bort
+ * högst en gång, så hela serien kostar O(n) oavsett fönstrets längd. Medel räknas ur prefixsummor.
+ * Nya intervall kan läggas på i slutet (t.ex. när morgondagens priser publiceras) utan att
+ * något tidigare räknas om.
+ *
+ * <p>De första intervallen har ett kortare fönster, bara det som finns hittills.
+ * Vid lika värden gäller det tidigaste intervallet i fönstret.</p>
+ */
+final class RullandeStatistik {
+
+    private final int fonster;
+    private double[] priser = new double[128];
+    private double[] prefix = new double[129]; // prefix[i] = summan av de i första priserna
+    private double[] min = new double[128];
+    private double[] max = new double[128];
+    private int antal;
+
+    private final Ko minKo;
+    private final Ko maxKo;
+
+    /**
+     * @param fonster Fönstrets längd i antal intervall.
+     */
+    RullandeStatistik(int fonster) {
+        if (fonster <= 0) {
+            throw new IllegalArgumentException("Ogiltig fönsterlängd: " + fonster);
+        }
+        this.fonster = fonster;
+        this.minKo = new Ko(fonster + 1);
+        this.maxKo = new Ko(fonster + 1);
+    }
+
+    void lagg(double pris) {
+        if (antal == priser.length) {
+            priser = Arrays.copyOf(priser, antal * 2);
+            prefix = Arrays.copyOf(prefix, antal * 2 + 1);
+            min = Arrays.copyOf(min, antal * 2);
+            max = Arrays.copyOf(max, antal * 2);
+        }
+        int i = antal++;
+        priser[i] = pris;
+        prefix[i + 1] = prefix[i] + pris;
+
+        // Index som fallit ur fönstret tas bort först, sedan de som aldrig kan bli min/max igen
+        int forsta = i - fonster + 1;
+        while (!minKo.arTom() && minKo.forsta() < forsta) minKo.taForsta();
+        while (!maxKo.arTom() && maxKo.forsta() < forsta) maxKo.taForsta();
+        while (!minKo.arTom() && priser[minKo.sista()] > pris) minKo.taSista();
+        while (!maxKo.arTom() && priser[maxKo.sista()] < pris) maxKo.taSista();
+        minKo.lagg(i);
+        maxKo.lagg(i);
+
+        min[i] = priser[minKo.forsta()];
+        max[i] = priser[maxKo.forsta()];
+    }
+
+    int antal() { return antal; }
+    int fonster() { return fonster; }
+
+    // Fönstret som slutar med intervall i
+    double min(int i) { return min[kontrollera(i)]; }
+    double max(int i) { return max[kontrollera(i)]; }
+    double medel(int i) {
+        int slut = kontrollera(i) + 1;
+        int start = Math.max(0, slut - fonster);
+        return (prefix[slut] - prefix[start]) / (slut - start);
+    }
+
+    private int kontrollera(int i) {
+        if (i < 0 || i >= antal) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return i;
+    }
+
+    // Dubbelsidig kö av index i en ringbuffert. Rymmer högst fönster + 1 index.
+    private static final class Ko {
+        private final int[] index;
+        private int huvud;
+        private int langd;
+
+        Ko(int kapacitet) {
+            this.index = new int[kapacitet];
+        }
+
+        boolean arTom() { return langd == 0; }
+        int forsta() { return index[huvud]; }
+        int sista() { return index[(huvud + langd - 1) % index.length]; }
+
+        void taForsta() {
+            huvud = (huvud + 1) % index.length;
+            langd--;
+        }
+
+        void taSista() {
+            langd--;
+        }
+
+        void lagg(int i) {
+            index[(huvud + langd) % index.length] = i;
+            langd++;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import com.example.api.Tider;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Jämför SE1–SE4 sida vid sida (--zone ALL).
+ * Alla fyra zoner hämtas samtidigt i en StructuredTaskScope med en gemensam deadline,
+ * så svarstiden blir ungefär en hämtning i stället för fyra. Misslyckas en hämtning
+ * avbryts de övriga.
+ */
+final class ZonJamforelse {
+
+    static final Duration DEADLINE = Duration.ofSeconds(10);
+
+    private static final ElpriserAPI.Prisklass[] ZONER = ElpriserAPI.Prisklass.values();
+
+    private ZonJamforelse() {
+    }
+
+    /**
+     * Hämtar alla zoner parallellt. Kastar om någon zon saknar data, om en hämtning
+     * misslyckas eller om deadline passeras.
+     */
+    static Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> hamtaAlla(ElpriserAPI api, LocalDate datum, Duration deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            Map<ElpriserAPI.Prisklass, StructuredTaskScope.Subtask<List<ElpriserAPI.Elpris>>> uppgifter =
+                    new EnumMap<>(ElpriserAPI.Prisklass.class);
+            for (ElpriserAPI.Prisklass zon : ZONER) {
+                uppgifter.put(zon, scope.fork(() -> {
+                    ElpriserAPI.Hamtning hamtning = api.hamtaPriser(datum, zon);
+                    switch (hamtning.status()) {
+                        case OK -> { return hamtning.priser(); }
+                        case TIDSGRANS -> throw new IllegalStateException("Tidsgränsen överskreds för " + zon);
+                        case FEL -> throw new IllegalStateException("Hämtningen misslyckades för " + zon);
+                        default -> throw new IllegalStateException("Ingen data för " + zon);
+                    }
+                }));
+            }
+
+            scope.joinUntil(Instant.now().plus(deadline));
+            scope.throwIfFailed();
+
+            Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> resultat = new EnumMap<>(ElpriserAPI.Prisklass.class);
+            uppgifter.forEach((zon, uppgift) -> resultat.put(zon, uppgift.get()));
+            return resultat;
+        }
+    }
+
+    // Skriver ut en tabell per intervall med alla zoner och spridningen (dyraste - billigaste zon)
+    static void visa(ElpriserAPI api, LocalDate datum) {
+        Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> allaZoner;
+        try {
+            allaZoner = hamtaAlla(api, datum, DEADLINE);
+        } catch (TimeoutException e) {
+            System.out.println("Tidsgränsen på " + DEADLINE.toSeconds() + " s passerades vid hämtning av alla zoner");
+            return;
+        } catch (ExecutionException e) {
+            System.out.println("Kunde inte hämta alla zoner: " + e.getCause().getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        skriv(allaZoner);
+    }
+
+    // Tabellen för zoner som redan är hämtade
+    static void skriv(Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> allaZoner) {
+        // Rada upp zonerna per starttid; saknas ett intervall i en zon blir det NaN
+        ZonMatris matris = ZonMatris.bygg(allaZoner);
+        double[] spridning = matris.spridning();
+
+        StringBuilder rubrik = new StringBuilder("Tid  ");
+        for (ElpriserAPI.Prisklass zon : ZONER) rubrik.append(String.format(" %8s", zon));
+        rubrik.append(String.format(" %10s", "Spridning"));
+        System.out.println(rubrik);
+
+        double summaSpridning = 0;
+        for (int i = 0; i < matris.antalIntervall(); i++) {
+            StringBuilder utRad = new StringBuilder(Tider.minut(matris.tid(i)));
+            for (ElpriserAPI.Prisklass zon : ZONER) {
+                double v = matris.priser(zon)[i];
+                utRad.append(String.format(" %8s", Double.isNaN(v) ? "-" : Main.nf.format(v * 100)));
+            }
+            utRad.append(String.format(" %10s", Main.nf.format(spridning[i] * 100)));
+            System.out.println(utRad);
+            summaSpridning += spridning[i];
+        }
+
+        int[] storsta = matris.storstaSpridning(1);
+        if (storsta.length > 0) {
+            System.out.printf("Medelspridning: %s öre%n", Main.nf.format(summaSpridning / matris.antalIntervall() * 100));
+            System.out.printf("Största spridning: %s öre Kl: %s%n",
+                    Main.nf.format(spridning[storsta[0]] * 100), Tider.minut(matris.tid(storsta[0])));
+        }
+    }
+}
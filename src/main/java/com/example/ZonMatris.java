@@ -0,0 +1,220 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import com.example.api.Tider;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SE1–SE4 uppradade på gemensamma starttider: en primitiv {@code double[zon][intervall]} där ett
+ * intervall som saknas i en zon är NaN. Spridningen mellan zonerna räknas ut en gång när matrisen
+ * byggs, både totalt (dyraste minus billigaste zon) och för varje zonpar, så frågor som
+ * "de K intervallen med störst spridning" bara är ett urval över en färdig array.
+ *
+ * <p>Zonernas serier måste vara i tidsordning (som API:et ger dem). Intervallen rads upp på exakt
+ * starttid, så en zon med timpriser får NaN på kvartarna där andra zoner har kvartspriser.</p>
+ */
+public final class ZonMatris {
+
+    private static final ElpriserAPI.Prisklass[] ZONER = ElpriserAPI.Prisklass.values();
+
+    private final long[] start;          // epoch-sekund per intervall, stigande
+    private final int[] offset;          // UTC-offset per intervall, för tider och etiketter
+    private final double[][] priser;     // [zon][intervall], NaN om zonen saknar intervallet
+    private final double[] spridning;    // dyraste minus billigaste zon med pris, NaN om ingen har pris
+    private final double[][] parSpridning; // [parIndex(a, b)][intervall] = pris(b) - pris(a) för a < b
+
+    private ZonMatris(Serie[] serier) {
+        // Unionen av alla starttider: sammanfogning av zonernas sorterade serier
+        int total = 0;
+        for (Serie s : serier) total += s.antal;
+        long[] allaStarter = new long[total];
+        int[] allaOffset = new int[total];
+        int[] pos = new int[ZONER.length];
+        int antal = 0;
+        while (true) {
+            int zon = -1;
+            for (int z = 0; z < ZONER.length; z++) {
+                if (pos[z] < serier[z].antal && (zon < 0 || serier[z].start[pos[z]] < serier[zon].start[pos[zon]])) {
+                    zon = z;
+                }
+            }
+            if (zon < 0) break;
+            long t = serier[zon].start[pos[zon]];
+            if (antal == 0 || allaStarter[antal - 1] != t) {
+                allaStarter[antal] = t;
+                allaOffset[antal] = serier[zon].offset[pos[zon]];
+                antal++;
+            }
+            pos[zon]++;
+        }
+        this.start = Arrays.copyOf(allaStarter, antal);
+        this.offset = Arrays.copyOf(allaOffset, antal);
+
+        this.priser = new double[ZONER.length][antal];
+        for (int z = 0; z < ZONER.length; z++) {
+            Arrays.fill(priser[z], Double.NaN);
+            int j = 0;
+            for (int i = 0; i < serier[z].antal; i++) {
+                while (start[j] < serier[z].start[i]) j++;
+                priser[z][j] = serier[z].pris[i];
+            }
+        }
+
+        this.spridning = new double[antal];
+        for (int i = 0; i < antal; i++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int z = 0; z < ZONER.length; z++) {
+                double v = priser[z][i];
+                if (!Double.isNaN(v)) {
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            spridning[i] = min <= max ? max - min : Double.NaN;
+        }
+
+        this.parSpridning = new double[ZONER.length * (ZONER.length - 1) / 2][];
+        for (int a = 0; a < ZONER.length; a++) {
+            for (int b = a + 1; b < ZONER.length; b++) {
+                double[] d = new double[antal];
+                for (int i = 0; i < antal; i++) {
+                    d[i] = priser[b][i] - priser[a][i];
+                }
+                parSpridning[parIndex(a, b)] = d;
+            }
+        }
+    }
+
+    /**
+     * Bygger matrisen av priser som redan är hämtade, en lista per zon. Zoner som saknas blir NaN.
+     */
+    public static ZonMatris bygg(Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> perZon) {
+        Serie[] serier = new Serie[ZONER.length];
+        for (int z = 0; z < ZONER.length; z++) {
+            serier[z] = new Serie();
+            List<ElpriserAPI.Elpris> lista = perZon.get(ZONER[z]);
+            if (lista == null) continue;
+            for (ElpriserAPI.Elpris p : lista) {
+                serier[z].lagg(p.timeStart().toEpochSecond(), p.timeStart().getOffset().getTotalSeconds(), p.sekPerKWh());
+            }
+        }
+        return new ZonMatris(serier);
+    }
+
+    /**
+     * Bygger matrisen för alla zoner från och med {@code fran} till och med {@code till}.
+     * Dagarna läses med {@link ElpriserAPI#forEachPris}, direkt in i primitiva arrayer.
+     */
+    public static ZonMatris hamta(ElpriserAPI api, LocalDate fran, LocalDate till) {
+        Serie[] serier = new Serie[ZONER.length];
+        for (int z = 0; z < ZONER.length; z++) {
+            Serie serie = new Serie();
+            for (LocalDate dag = fran; !dag.isAfter(till); dag = dag.plusDays(1)) {
+                api.forEachPris(dag, ZONER[z], (start, startOffset, slut, slutOffset, sek, eur, exr) ->
+                        serie.lagg(start, startOffset, sek));
+            }
+            serier[z] = serie;
+        }
+        return new ZonMatris(serier);
+    }
+
+    public int antalIntervall() {
+        return start.length;
+    }
+
+    public ZonedDateTime tid(int intervall) {
+        return Tider.tid(start[intervall], offset[intervall]);
+    }
+
+    /**
+     * Intervallet som startar vid {@code epochSekund}, med binärsökning över starttiderna.
+     * @return intervallets index, eller -1 om inget intervall startar då.
+     */
+    public int index(long epochSekund) {
+        int i = Arrays.binarySearch(start, epochSekund);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Zonens priser per intervall. Arrayen delas med matrisen och får inte ändras. */
+    public double[] priser(ElpriserAPI.Prisklass zon) {
+        return priser[zon.ordinal()];
+    }
+
+    /** Dyraste minus billigaste zon per intervall. Arrayen delas med matrisen och får inte ändras. */
+    public double[] spridning() {
+        return spridning;
+    }
+
+    /**
+     * Pris i {@code b} minus pris i {@code a} per intervall, NaN om någon av dem saknas.
+     * Paren är förberäknade med zonerna i ordningen SE1–SE4; åt andra hållet skapas en ny array.
+     */
+    public double[] spridning(ElpriserAPI.Prisklass a, ElpriserAPI.Prisklass b) {
+        if (a == b) {
+            throw new IllegalArgumentException("Samma zon två gånger: " + a);
+        }
+        if (a.ordinal() < b.ordinal()) {
+            return parSpridning[parIndex(a.ordinal(), b.ordinal())];
+        }
+        double[] omvand = parSpridning[parIndex(b.ordinal(), a.ordinal())].clone();
+        for (int i = 0; i < omvand.length; i++) omvand[i] = -omvand[i];
+        return omvand;
+    }
+
+    /** De k intervallen med störst total spridning, störst först (tidigaste vid lika). */
+    public int[] storstaSpridning(int k) {
+        return storsta(spridning, k, false);
+    }
+
+    /** De k intervallen med störst prisskillnad mellan två zoner, oavsett riktning. */
+    public int[] storstaSpridning(ElpriserAPI.Prisklass a, ElpriserAPI.Prisklass b, int k) {
+        return storsta(spridning(a, b), k, true);
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    // Index för paret a < b bland de n·(n-1)/2 paren
+    private static int parIndex(int a, int b) {
+        return a * (2 * ZONER.length - a - 1) / 2 + (b - a - 1);
+    }
+
+    // Saknade värden blir -oändligheten och väljs därför aldrig
+    private static int[] storsta(double[] v, int k, boolean absolut) {
+        double[] nyckel = new double[v.length];
+        int giltiga = 0;
+        for (int i = 0; i < v.length; i++) {
+            if (Double.isNaN(v[i])) {
+                nyckel[i] = Double.NEGATIVE_INFINITY;
+            } else {
+                nyckel[i] = absolut ? Math.abs(v[i]) : v[i];
+                giltiga++;
+            }
+        }
+        return PrisRangordning.dyraste(nyckel, Math.min(k, giltiga));
+    }
+
+    // En zons starttider, offsets och priser i växande arrayer
+    private static final class Serie {
+        long[] start = new long[128];
+        int[] offset = new int[128];
+        double[] pris = new double[128];
+        int antal;
+
+        void lagg(long t, int off, double p) {
+            if (antal == start.length) {
+                start = Arrays.copyOf(start, antal * 2);
+                offset = Arrays.copyOf(offset, antal * 2);
+                pris = Arrays.copyOf(pris, antal * 2);
+            }
+            start[antal] = t;
+            offset[antal] = off;
+            pris[antal] = p;
+            antal++;
+        }
+    }
+}
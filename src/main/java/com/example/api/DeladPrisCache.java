@@ -0,0 +1,324 @@
+package com.example.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * En cache i en minnesmappad fil som kan delas av många samtidiga processer på samma maskin.
+ * Filen har ett fast antal platser (slots), en per "datum_zon", med en fast layout av primitiva fält,
+ * så en process kan läsa priser som en annan process redan hämtat utan någon JSON-tolkning.
+ *
+ * <p>Läsare tar inga lås utan använder ett seqlock: sekvensnumret är udda medan en skrivning pågår
+ * och läsningen görs om om numret ändrats under tiden. Skrivare samordnas mellan processer med
+ * {@link FileChannel#lock(long, long, boolean)} på den plats som skrivs, och inom processen med
+ * ett lås per fil som delas av alla instanser som öppnat den.</p>
+ *
+ * <p>Bara regelbundna serier (samma villkor som {@link PrisKodek}) med högst {@value #MAX_INTERVALL}
+ * intervall får plats.</p>
+ */
+public final class DeladPrisCache implements Closeable {
+
+    /** Högst 25 timmar med kvartspriser (dagen då sommartiden slutar). */
+    public static final int MAX_INTERVALL = 100;
+
+    private static final int MAGIC = 0x454C5043; // "ELPC"
+    private static final int VERSION = 1;
+    private static final int HUVUD_STORLEK = 64;
+
+    // Fältens position inom en plats. Alla long/double ligger på 8-bytegräns.
+    private static final int SEQ = 0;
+    private static final int EPOCH_DAG = 8;
+    private static final int ZON = 12;          // zonens ordinal + 1, 0 = tom plats
+    private static final int ANTAL = 16;
+    private static final int INTERVALL = 20;
+    private static final int START = 24;
+    private static final int EXR = 32;
+    private static final int OFFSET_FORE = 40;
+    private static final int BYTE_INDEX = 44;   // index där OFFSET_EFTER börjar gälla, ANTAL om inget byte
+    private static final int OFFSET_EFTER = 48;
+    private static final int SEK = 56;
+    private static final int EUR = SEK + MAX_INTERVALL * 8;
+    private static final int PLATS_STORLEK = EUR + MAX_INTERVALL * 8;
+
+    // Antal platser som provas vid en krock innan hemplatsen skrivs över
+    private static final int MAX_SOND = 8;
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // Ett lås per fil och process. Två överlappande FileLock i samma JVM är inte tillåtet
+    // (OverlappingFileLockException), så instanser som öppnat samma fil turas om via detta.
+    private static final Map<Path, Object> FIL_LAS = new ConcurrentHashMap<>();
+
+    private final FileChannel kanal;
+    private final MappedByteBuffer buf;
+    private final int antalPlatser;
+    private final Object filLas;
+
+    private DeladPrisCache(FileChannel kanal, MappedByteBuffer buf, int antalPlatser, Object filLas) {
+        this.kanal = kanal;
+        this.buf = buf;
+        this.antalPlatser = antalPlatser;
+        this.filLas = filLas;
+    }
+
+    /**
+     * Öppnar (och skapar vid behov) en delad cachefil.
+     * @param fil Sökväg till cachefilen, samma för alla processer som ska dela cache.
+     * @param antalPlatser Antal platser om filen skapas; en befintlig fil behåller sitt antal.
+     */
+    public static DeladPrisCache oppna(Path fil, int antalPlatser) throws IOException {
+        FileChannel kanal = FileChannel.open(fil, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Object filLas = FIL_LAS.computeIfAbsent(fil.toRealPath(), f -> new Object());
+            MappedByteBuffer huvud;
+            // Låset på huvudet gör att bara en process initierar en ny fil
+            synchronized (filLas) {
+                FileLock lock = kanal.lock(0, HUVUD_STORLEK, false);
+                try {
+                    if (kanal.size() < HUVUD_STORLEK) {
+                        long storlek = HUVUD_STORLEK + (long) antalPlatser * PLATS_STORLEK;
+                        huvud = kanal.map(FileChannel.MapMode.READ_WRITE, 0, storlek);
+                        huvud.order(ByteOrder.nativeOrder());
+                        huvud.putInt(4, VERSION).putInt(8, antalPlatser).putInt(12, PLATS_STORLEK);
+                        huvud.putInt(0, MAGIC);
+                        huvud.force();
+                    } else {
+                        huvud = kanal.map(FileChannel.MapMode.READ_WRITE, 0, HUVUD_STORLEK);
+                        huvud.order(ByteOrder.nativeOrder());
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+            if (huvud.getInt(0) != MAGIC || huvud.getInt(4) != VERSION || huvud.getInt(12) != PLATS_STORLEK) {
+                throw new IOException("Okänt format på delad cachefil: " + fil);
+            }
+            int platser = huvud.getInt(8);
+            MappedByteBuffer buf = kanal.map(FileChannel.MapMode.READ_WRITE, 0, HUVUD_STORLEK + (long) platser * PLATS_STORLEK);
+            buf.order(ByteOrder.nativeOrder());
+            return new DeladPrisCache(kanal, buf, platser, filLas);
+        } catch (IOException | RuntimeException e) {
+            kanal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Läser priserna för datum och zon, eller null om de inte finns i cachen.
+     */
+    public List<ElpriserAPI.Elpris> las(LocalDate datum, ElpriserAPI.Prisklass zon) {
+        double[] sek = new double[MAX_INTERVALL];
+        double[] eur = new double[MAX_INTERVALL];
+        long[] tid = new long[2];
+        int[] offset = new int[3];
+        double[] exr = new double[1];
+        int antal = lasPlats(datum, zon, sek, eur, tid, offset, exr);
+        if (antal <= 0) {
+            return null;
+        }
+        PrisKodek.Serie serie = offset[1] < antal
+                ? new PrisKodek.Serie(tid[0], (int) tid[1], exr[0], new int[]{0, offset[1]}, new int[]{offset[0], offset[2]})
+                : new PrisKodek.Serie(tid[0], (int) tid[1], exr[0], new int[]{0}, new int[]{offset[0]});
+        return PrisKodek.bygg(serie, sek, eur, antal);
+    }
+
+    /**
+     * Skickar priserna för datum och zon till konsumenten, utan att skapa några Elpris-objekt.
+     * @return antal intervall, eller 0 om datum och zon inte finns i cachen.
+     */
+    public int las(LocalDate datum, ElpriserAPI.Prisklass zon, ElpriserAPI.PrisKonsument konsument) {
+        double[] sek = new double[MAX_INTERVALL];
+        double[] eur = new double[MAX_INTERVALL];
+        long[] tid = new long[2];
+        int[] offset = new int[3];
+        double[] exr = new double[1];
+        int antal = lasPlats(datum, zon, sek, eur, tid, offset, exr);
+        // Samma offsetregel som PrisKodek.bygg: sista intervallets slut har sista startens offset
+        for (int i = 0; i < antal; i++) {
+            int slutIndex = Math.min(i + 1, antal - 1);
+            konsument.pris(tid[0] + i * tid[1], i >= offset[1] ? offset[2] : offset[0],
+                    tid[0] + (i + 1) * tid[1], slutIndex >= offset[1] ? offset[2] : offset[0],
+                    sek[i], eur[i], exr[0]);
+        }
+        return antal;
+    }
+
+    /**
+     * Läser bara SEK-priserna in i en befintlig array, utan några allokeringar.
+     * @param sek Minst {@value #MAX_INTERVALL} platser.
+     * @return antal intervall, eller 0 om datum och zon inte finns i cachen.
+     */
+    public int lasSek(LocalDate datum, ElpriserAPI.Prisklass zon, double[] sek) {
+        return lasPlats(datum, zon, sek, null, null, null, null);
+    }
+
+    /**
+     * Skriver priserna för datum och zon. Serier som inte är regelbundna eller är för långa hoppas över.
+     * @return true om priserna skrevs.
+     */
+    public boolean skriv(LocalDate datum, ElpriserAPI.Prisklass zon, List<ElpriserAPI.Elpris> priser) throws IOException {
+        if (priser == null || priser.isEmpty() || priser.size() > MAX_INTERVALL) {
+            return false;
+        }
+        PrisKodek.Serie serie;
+        try {
+            serie = PrisKodek.analysera(priser);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (serie.bytenIndex().length > 2) {
+            return false;
+        }
+
+        int epochDag = (int) datum.toEpochDay();
+        int zonKod = zon.ordinal() + 1;
+        int plats = valjPlatsForSkrivning(epochDag, zonKod);
+        long bas = platsBas(plats);
+        int antal = priser.size();
+
+        // FileLock skyddar mot andra processer, filLas mot andra trådar och instanser i samma process
+        // (två överlappande FileLock i samma JVM är inte tillåtet).
+        synchronized (filLas) {
+            FileLock lock = kanal.lock(bas, PLATS_STORLEK, false);
+            try {
+                long seq = (long) LONG.getVolatile(buf, (int) bas + SEQ);
+                // Udda = skrivning pågår. Har en tidigare skrivare dött mitt i är numret redan udda.
+                long udda = (seq & 1) == 0 ? seq + 1 : seq + 2;
+                LONG.setVolatile(buf, (int) bas + SEQ, udda);
+                // Vanliga skrivningar får annars flyttas före det udda numret, och en läsare
+                // kunde då se nya data med det gamla jämna numret och godta en halvskriven plats
+                VarHandle.storeStoreFence();
+
+                int b = (int) bas;
+                buf.putInt(b + EPOCH_DAG, epochDag);
+                buf.putInt(b + ZON, zonKod);
+                buf.putInt(b + ANTAL, antal);
+                buf.putInt(b + INTERVALL, serie.intervall());
+                buf.putLong(b + START, serie.start());
+                buf.putDouble(b + EXR, serie.exr());
+                buf.putInt(b + OFFSET_FORE, serie.bytenOffset()[0]);
+                if (serie.bytenIndex().length == 2) {
+                    buf.putInt(b + BYTE_INDEX, serie.bytenIndex()[1]);
+                    buf.putInt(b + OFFSET_EFTER, serie.bytenOffset()[1]);
+                } else {
+                    buf.putInt(b + BYTE_INDEX, antal);
+                    buf.putInt(b + OFFSET_EFTER, serie.bytenOffset()[0]);
+                }
+                for (int i = 0; i < antal; i++) {
+                    ElpriserAPI.Elpris p = priser.get(i);
+                    buf.putDouble(b + SEK + i * 8, p.sekPerKWh());
+                    buf.putDouble(b + EUR + i * 8, p.eurPerKWh());
+                }
+
+                LONG.setRelease(buf, b + SEQ, udda + 1);
+            } finally {
+                lock.release();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        kanal.close();
+    }
+
+    // --- Privata hjälpmetoder ---
+
+    private long platsBas(int plats) {
+        return HUVUD_STORLEK + (long) plats * PLATS_STORLEK;
+    }
+
+    private int hemPlats(int epochDag, int zonKod) {
+        int h = epochDag * 31 + zonKod;
+        h ^= (h >>> 16);
+        h *= 0x45d9f3b;
+        h ^= (h >>> 16);
+        return Math.floorMod(h, antalPlatser);
+    }
+
+    // Samma plats om nyckeln redan finns, annars första tomma, annars hemplatsen
+    private int valjPlatsForSkrivning(int epochDag, int zonKod) {
+        int hem = hemPlats(epochDag, zonKod);
+        int tom = -1;
+        for (int i = 0; i < Math.min(MAX_SOND, antalPlatser); i++) {
+            int plats = (hem + i) % antalPlatser;
+            int b = (int) platsBas(plats);
+            int z = buf.getInt(b + ZON);
+            if (z == zonKod && buf.getInt(b + EPOCH_DAG) == epochDag) {
+                return plats;
+            }
+            if (z == 0 && tom < 0) {
+                tom = plats;
+            }
+        }
+        return tom >= 0 ? tom : hem;
+    }
+
+    /**
+     * Seqlock-läsning av en plats. Fälten som inte behövs skickas som null.
+     * tid = {start, intervall}, offset = {före, byteIndex, efter}.
+     * @return antal intervall, eller 0 om nyckeln saknas eller platsen skrivs om hela tiden.
+     */
+    private int lasPlats(LocalDate datum, ElpriserAPI.Prisklass zon,
+                         double[] sek, double[] eur, long[] tid, int[] offset, double[] exr) {
+        int epochDag = (int) datum.toEpochDay();
+        int zonKod = zon.ordinal() + 1;
+        int hem = hemPlats(epochDag, zonKod);
+
+        for (int i = 0; i < Math.min(MAX_SOND, antalPlatser); i++) {
+            int b = (int) platsBas((hem + i) % antalPlatser);
+            for (int forsok = 0; forsok < 1000; forsok++) {
+                long fore = (long) LONG.getAcquire(buf, b + SEQ);
+                if ((fore & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int z = buf.getInt(b + ZON);
+                boolean traff = z == zonKod && buf.getInt(b + EPOCH_DAG) == epochDag;
+                int antal = 0;
+                if (traff) {
+                    antal = Math.min(buf.getInt(b + ANTAL), MAX_INTERVALL);
+                    for (int j = 0; j < antal; j++) {
+                        sek[j] = buf.getDouble(b + SEK + j * 8);
+                    }
+                    if (eur != null) {
+                        for (int j = 0; j < antal; j++) {
+                            eur[j] = buf.getDouble(b + EUR + j * 8);
+                        }
+                        tid[0] = buf.getLong(b + START);
+                        tid[1] = buf.getInt(b + INTERVALL);
+                        offset[0] = buf.getInt(b + OFFSET_FORE);
+                        offset[1] = buf.getInt(b + BYTE_INDEX);
+                        offset[2] = buf.getInt(b + OFFSET_EFTER);
+                        exr[0] = buf.getDouble(b + EXR);
+                    }
+                }
+                VarHandle.acquireFence();
+                if ((long) LONG.getOpaque(buf, b + SEQ) != fore) {
+                    continue; // en skrivare hann emellan, läs om
+                }
+                if (traff) {
+                    return antal;
+                }
+                if (z == 0) {
+                    return 0; // tom plats, nyckeln finns inte längre fram i sonderingen
+                }
+                break;
+            }
+        }
+        return 0;
+    }
+}
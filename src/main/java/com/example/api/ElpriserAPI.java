@@ -1,19 +1,40 @@
 package com.example.api;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.OverlappingFileLockException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Ett enkelt API för att hämta elpriser från elprisetjustnu.se.
@@ -25,8 +46,52 @@ public final class ElpriserAPI {
     private static final String API_BASE_URL = "https://www.elprisetjustnu.se/api/v1/prices";
     private static final DateTimeFormatter URL_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM-dd");
 
-    // En återanvändbar HttpClient-instans
+    // Standardvärden för tidsgränser
+    public static final Duration STANDARD_ANSLUTNINGS_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration STANDARD_ANROPS_TIMEOUT = Duration.ofSeconds(10);
+
+    // Omförsök: max antal per hämtning och basfördröjning för backoff med jitter
+    private static final int MAX_OMFORSOK = 3;
+    private static final long OMFORSOK_BAS_MS = 100;
+
+    // Antal latensmätningar som krävs innan p95 används som hedge-fördröjning
+    private static final int MIN_LATENSER_FOR_HEDGE = 20;
+
+    // Processgemensam budget för omförsök och hedge-anrop, så att ett nere API inte får dubbel last
+    private static final ForsokBudget FORSOK_BUDGET = new ForsokBudget();
+
+    // HttpClient-instanserna delas av hela processen, en per anslutningstidsgräns (den kan inte
+    // sättas per anrop). Alla instanser av ElpriserAPI delar därmed anslutningar och TLS-sessioner,
+    // och med HTTP/2 går samtidiga anrop över samma anslutning.
+    private static final Map<Duration, HttpClient> DELADE_KLIENTER = new ConcurrentHashMap<>();
+
+    // Exekverare för klienternas interna arbete, och virtuella trådar för hämtningar som väntar på nätverket
+    private static final ExecutorService HTTP_EXEKVERARE =
+            Executors.newFixedThreadPool(4, Thread.ofPlatform().name("elpriser-http-", 0).daemon().factory());
+    private static final ExecutorService HAMTNINGAR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final ScheduledExecutorService VAGSCHEMA =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("elpriser-vag").daemon().factory());
+
+    // Pågående nätverkshämtningar per cache-nyckel, delade av alla instanser. Samtidiga missar
+    // för samma dag väntar på samma hämtning i stället för att skicka egna anrop.
+    private static final Map<String, Flygning> PAGAENDE = new ConcurrentHashMap<>();
+
+    // Missar samlas så här länge och skickas sedan tillsammans som en våg
+    private static final long SAMLINGSFONSTER_MS = 5;
+    private static final Object VAG_LAS = new Object();
+    private static List<Runnable> vag = new ArrayList<>();
+
+    // Processens delade HttpClient för den här instansens anslutningstidsgräns
     private final HttpClient httpClient;
+
+    // Tidsgräns per HTTP-anrop
+    private final Duration anropsTimeout;
+
+    // Tidsgräns för en hel hämtning, omförsök och hedge-anrop inräknade
+    private final Duration hamtningsTimeout;
+
+    // De senaste svarstiderna, används för att välja när ett hedge-anrop ska skickas
+    private final Latenser latenser = new Latenser(64);
     
     // Flagga för att styra cachlagring
     private final boolean cachingEnabled;
@@ -34,6 +99,27 @@ public final class ElpriserAPI {
     // Ett enkelt minnes-cache. Nyckeln är en kombination av datum och prisklass, t.ex. "2025-08-30_SE3"
     private final Map<String, List<Elpris>> inMemoryCache;
 
+    // Dataversion per nyckel i minnes-cachen. Får ett nytt värde varje gång posten ersätts.
+    private final Map<String, Long> dataVersioner = new ConcurrentHashMap<>();
+    private final AtomicLong versionRaknare = new AtomicLong();
+
+    // Andra cache-lagret: beräknade resultat (statistik, laddfönster, ...) per dataversioner och fråga
+    private final Map<HarleddNyckel, Object> harleddaResultat = new ConcurrentHashMap<>();
+
+    private record HarleddNyckel(List<String> cacheKeys, List<Long> versioner, Object fraga) {}
+
+    // ETag/Last-Modified från senaste svaret per nyckel, för villkorliga anrop i uppdatera()
+    private final Map<String, Validerare> validerare = new ConcurrentHashMap<>();
+
+    private record Validerare(String etag, String senastAndrad) {}
+
+    // Valfri cache i en minnesmappad fil som delas med andra processer
+    private volatile DeladPrisCache deladCache;
+
+    // Vart statusmeddelanden ("Hämtar från ...") skrivs. null = System.out, som läses vid varje
+    // utskrift så att en omdirigerad System.out följs.
+    private static volatile PrintStream loggStrom;
+
     /**
      * En record som representerar ett enskilt elpris för en given tidsperiod.
      * Användningen av 'record' genererar automatiskt constructor, getters, equals, hashCode och toString.
@@ -53,6 +139,32 @@ public final class ElpriserAPI {
         SE1, SE2, SE3, SE4
     }
 
+    /**
+     * Utfallet av en hämtning. Skiljer på "det finns inga priser" (t.ex. morgondagen före ~13:00),
+     * "API:et svarade inte i tid" och "något annat gick fel".
+     */
+    public enum HamtningsStatus {
+        OK, INGEN_DATA, TIDSGRANS, FEL
+    }
+
+    /**
+     * Resultatet av {@link #hamtaPriser(LocalDate, Prisklass)}. Listan är tom om statusen inte är OK.
+     */
+    public record Hamtning(HamtningsStatus status, List<Elpris> priser) {
+        static Hamtning utan(HamtningsStatus status) {
+            return new Hamtning(status, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Tar emot ett elpris i taget som primitiva värden, så att inga {@link Elpris}-objekt
+     * eller listor behöver skapas. Tiderna är epoch-sekunder med respektive UTC-offset i sekunder.
+     */
+    @FunctionalInterface
+    public interface PrisKonsument {
+        void pris(long start, int startOffset, long slut, int slutOffset, double sekPerKWh, double eurPerKWh, double exr);
+    }
+
     // --- Static fields for the test hook ---
     /**
      * This supplier is used ONLY for testing. If it's not null, the class will
@@ -92,8 +204,35 @@ public final class ElpriserAPI {
         mockResponseSupplier = null;
         datedMockResponses.clear();
     }
+
+    // Bas-URL för nätverksanrop; kan pekas om mot en lokal server i tester
+    private static volatile String basUrl = API_BASE_URL;
+
+    /**
+     * FOR TESTS ONLY: Points network requests at another server, e.g. a local HttpServer,
+     * and refills the shared retry budget so that tests do not depend on each other.
+     * @param url The base URL, or null for the real API.
+     */
+    static void setBasUrl(String url) {
+        basUrl = url != null ? url : API_BASE_URL;
+        FORSOK_BUDGET.fyll();
+    }
     // --- End of test fields ---
 
+    /**
+     * Styr vart API:ets statusmeddelanden skrivs, t.ex. System.err när standard ut
+     * ska innehålla maskinläsbar data. Felmeddelanden går alltid till System.err.
+     * @param strom Strömmen, eller null för System.out.
+     */
+    public static void setLoggStrom(PrintStream strom) {
+        loggStrom = strom;
+    }
+
+    private static PrintStream logg() {
+        PrintStream strom = loggStrom;
+        return strom != null ? strom : System.out;
+    }
+
     /**
      * Standardkonstruktor som aktiverar cachning.
      */
@@ -106,13 +245,39 @@ public final class ElpriserAPI {
      * @param enableCaching Sätt till true för att aktivera minnes-cachning, annars false.
      */
     public ElpriserAPI(boolean enableCaching) {
-        this.httpClient = HttpClient.newBuilder()
+        this(enableCaching, STANDARD_ANSLUTNINGS_TIMEOUT, STANDARD_ANROPS_TIMEOUT);
+    }
+
+    /**
+     * Konstruktor med egna tidsgränser.
+     * @param enableCaching Sätt till true för att aktivera minnes-cachning, annars false.
+     * @param anslutningsTimeout Maxtid för att upprätta en anslutning.
+     * @param anropsTimeout Maxtid för ett enskilt HTTP-anrop. En hel hämtning, med omförsök och
+     *                      hedge-anrop, tar högst 2,5 gånger så lång tid: ett nytt anrop skickas bara
+     *                      om det hinner få hela sin tidsgräns innan dess.
+     */
+    public ElpriserAPI(boolean enableCaching, Duration anslutningsTimeout, Duration anropsTimeout) {
+        this.httpClient = DELADE_KLIENTER.computeIfAbsent(anslutningsTimeout, timeout -> HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
                 .followRedirects(HttpClient.Redirect.NORMAL)
-                .build();
+                .connectTimeout(timeout)
+                .executor(HTTP_EXEKVERARE)
+                .build());
+        this.anropsTimeout = anropsTimeout;
+        this.hamtningsTimeout = anropsTimeout.multipliedBy(5).dividedBy(2);
         this.cachingEnabled = enableCaching;
         // ConcurrentHashMap är trådsäker om klassen skulle användas i flera trådar
         this.inMemoryCache = new ConcurrentHashMap<>();
-        System.out.println("ElpriserAPI initialiserat. Cachning: " + (enableCaching ? "På" : "Av"));
+        logg().println("ElpriserAPI initialiserat. Cachning: " + (enableCaching ? "På" : "Av"));
+    }
+
+    /**
+     * Kopplar in en delad cache i en minnesmappad fil. Den kollas efter minnes-cachen och
+     * fylls på med allt som hämtas från nätverket, så att andra processer slipper hämta och tolka om.
+     * @param cache Den delade cachen, eller null för att koppla bort den.
+     */
+    public void setDeladCache(DeladPrisCache cache) {
+        this.deladCache = cache;
     }
 
     /**
@@ -141,76 +306,476 @@ public final class ElpriserAPI {
      * @return En lista av {@link Elpris}-objekt, eller en tom lista om data inte kunde hämtas.
      */
     public List<Elpris> getPriser(LocalDate datum, Prisklass prisklass) {
+        return hamtaPriser(datum, prisklass).priser();
+    }
+
+    /**
+     * Som {@link #getPriser(LocalDate, Prisklass)}, men talar också om varför listan är tom.
+     *
+     * @param datum Dagen att hämta priser för.
+     * @param prisklass Elprisområdet (SE1, SE2, SE3 eller SE4).
+     * @return En {@link Hamtning} med status och priser.
+     */
+    public Hamtning hamtaPriser(LocalDate datum, Prisklass prisklass) {
+        return hamta(datum, prisklass, false);
+    }
+
+    /**
+     * Kollar om priserna för en dag har ändrats sedan de hämtades, utan att gå via cacharna.
+     * Finns dagen redan i minnes-cachen skickas ett villkorligt anrop (If-None-Match/If-Modified-Since),
+     * så att ett oförändrat svar bara blir en 304 utan kropp. Minnes-cachen uppdateras bara om
+     * priserna faktiskt ändrats, så beräknade resultat från {@link #harlett} behålls annars.
+     *
+     * @param datum Dagen att kontrollera.
+     * @param prisklass Elprisområdet.
+     * @return En {@link Hamtning} med de aktuella priserna.
+     */
+    public Hamtning uppdatera(LocalDate datum, Prisklass prisklass) {
+        return hamta(datum, prisklass, true);
+    }
+
+    private Hamtning hamta(LocalDate datum, Prisklass prisklass, boolean revalidera) {
         String cacheKey = getCacheKey(datum, prisklass);
 
         // Steg 1: Kolla minnes-cachen
-        if (cachingEnabled && inMemoryCache.containsKey(cacheKey)) {
-            System.out.println("Hämtar från minnes-cache för " + cacheKey);
-            return inMemoryCache.get(cacheKey);
+        if (!revalidera && cachingEnabled && inMemoryCache.containsKey(cacheKey)) {
+            logg().println("Hämtar från minnes-cache för " + cacheKey);
+            return new Hamtning(HamtningsStatus.OK, inMemoryCache.get(cacheKey));
+        }
+
+        // Steg 1b: Kolla den delade cachen om en sådan är inkopplad
+        DeladPrisCache delad = deladCache;
+        if (!revalidera && delad != null) {
+            List<Elpris> priserFrånDelad = delad.las(datum, prisklass);
+            if (priserFrånDelad != null) {
+                logg().println("Hämtar från delad cache för " + cacheKey);
+                if (cachingEnabled) {
+                    cachePut(cacheKey, priserFrånDelad);
+                }
+                return new Hamtning(HamtningsStatus.OK, priserFrånDelad);
+            }
         }
 
         // Steg 2: Försök ladda från disk-cache (framtida implementation)
-        var priserFrånDisk = loadFromDiskCache(cacheKey);
+        var priserFrånDisk = revalidera ? null : loadFromDiskCache(cacheKey);
         if (cachingEnabled && priserFrånDisk != null && !priserFrånDisk.isEmpty()) {
-             System.out.println("Hämtar från disk-cache för " + cacheKey);
-             inMemoryCache.put(cacheKey, priserFrånDisk); // Lägg i minnes-cachen för snabbare åtkomst nästa gång
-             return priserFrånDisk;
+             logg().println("Hämtar från disk-cache för " + cacheKey);
+             cachePut(cacheKey, priserFrånDisk); // Lägg i minnes-cachen för snabbare åtkomst nästa gång
+             return new Hamtning(HamtningsStatus.OK, priserFrånDisk);
         }
 
         // Check for a mock response before making a network call ---
         if (mockResponseSupplier != null || !datedMockResponses.isEmpty()) {
-            System.out.println("!!! ANVÄNDER MOCK-DATA FÖR TEST !!!");
+            logg().println("!!! ANVÄNDER MOCK-DATA FÖR TEST !!!");
             String mockJson = datedMockResponses.getOrDefault(datum, mockResponseSupplier == null ? null : mockResponseSupplier.get());
             if (mockJson == null || mockJson.isBlank()) {
-                return Collections.emptyList();
+                return Hamtning.utan(HamtningsStatus.INGEN_DATA);
             }
             List<Elpris> priser = parseSimpleJson(mockJson);
             if (cachingEnabled && !priser.isEmpty()) {
-                inMemoryCache.put(cacheKey, priser);
+                cachePut(cacheKey, priser);
             }
-            return priser;
+            return priser.isEmpty() ? Hamtning.utan(HamtningsStatus.INGEN_DATA) : new Hamtning(HamtningsStatus.OK, priser);
         }
         // --- End of mock check ---
 
         // Steg 3: Hämta från nätverket om det inte finns i cachen
-        System.out.println("Hämtar från nätverket för " + cacheKey);
+        logg().println("Hämtar från nätverket för " + cacheKey);
         String url = buildUrl(datum, prisklass);
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(url)).timeout(anropsTimeout).GET();
+        Validerare v = validerare.get(cacheKey);
+        if (revalidera && v != null && inMemoryCache.containsKey(cacheKey)) {
+            if (v.etag() != null) builder.header("If-None-Match", v.etag());
+            if (v.senastAndrad() != null) builder.header("If-Modified-Since", v.senastAndrad());
+        }
+        HttpRequest request = builder.build();
         try {
-            HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Hamtning hamtning = revalidera
+                    ? hamtaMedOmforsok(request, cacheKey, null) // villkorligt anrop med den här instansens validerare
+                    : hamtaSamlat(request, cacheKey);
 
-            // Om sidan inte finns (t.ex. priser för morgondagen) returneras 404
-            if (response.statusCode() == 404) {
-                System.out.println("Inga priser hittades för " + cacheKey + " (HTTP 404).");
-                return Collections.emptyList();
+            // Steg 4: Spara i cache om cachning är på
+            if (cachingEnabled && hamtning.status() == HamtningsStatus.OK) {
+                cachePut(cacheKey, hamtning.priser());
             }
-            if (response.statusCode() != 200) {
-                 System.err.println("Misslyckades med att hämta priser. Statuskod: " + response.statusCode());
-                 return Collections.emptyList();
+            if (delad != null && hamtning.status() == HamtningsStatus.OK) {
+                try {
+                    delad.skriv(datum, prisklass, hamtning.priser());
+                } catch (IOException | OverlappingFileLockException e) {
+                    System.err.println("Kunde inte skriva till delad cache: " + e.getMessage());
+                }
             }
+            return hamtning;
 
-            List<Elpris> priser = parseSimpleJson(response.body());
+        } catch (InterruptedException e) {
+            System.err.println("Hämtningen av elpriser avbröts för " + cacheKey);
+            Thread.currentThread().interrupt(); // Återställ flaggan, tråden blev faktiskt avbruten
+            return Hamtning.utan(HamtningsStatus.FEL);
+        }
+    }
 
-            // Steg 4: Spara i cache om cachning är på
-            if (cachingEnabled && !priser.isEmpty()) {
-                inMemoryCache.put(cacheKey, priser);
-                saveToDiskCache(cacheKey, response.body()); // Spara rådata till disk (framtida implementation)
+    /**
+     * Hämtar flera dagar i följd samtidigt, så att de dagar som saknas i cachen skickas i samma våg
+     * (och över samma HTTP/2-anslutning) i stället för en i taget.
+     *
+     * @param fran Första dagen.
+     * @param antalDagar Antal dagar.
+     * @param prisklass Elprisområdet.
+     * @return En {@link Hamtning} per dag, i dagordning.
+     */
+    public List<Hamtning> hamtaDagar(LocalDate fran, int antalDagar, Prisklass prisklass) {
+        List<CompletableFuture<Hamtning>> hamtningar = new ArrayList<>(antalDagar);
+        for (int i = 0; i < antalDagar; i++) {
+            LocalDate dag = fran.plusDays(i);
+            hamtningar.add(CompletableFuture.supplyAsync(() -> hamtaPriser(dag, prisklass), HAMTNINGAR));
+        }
+        List<Hamtning> resultat = new ArrayList<>(antalDagar);
+        for (CompletableFuture<Hamtning> f : hamtningar) {
+            resultat.add(f.join());
+        }
+        return resultat;
+    }
+
+    /**
+     * Skickar priserna för en dag, ett i taget och i tidsordning, till {@code konsument}.
+     * Finns dagen i minnes-cachen eller den delade cachen läses den därifrån; annars tolkas
+     * svaret direkt in i konsumenten utan att någon lista byggs. Dagen läggs inte i minnes-cachen,
+     * så en enda genomgång av ett långt datumintervall håller inte kvar något minne.
+     *
+     * @param datum Dagen att hämta priser för.
+     * @param prisklass Elprisområdet.
+     * @param konsument Tar emot varje pris.
+     * @return OK om minst ett pris skickades, annars varför inte.
+     */
+    public HamtningsStatus forEachPris(LocalDate datum, Prisklass prisklass, PrisKonsument konsument) {
+        String cacheKey = getCacheKey(datum, prisklass);
+
+        List<Elpris> cachade = cachingEnabled ? inMemoryCache.get(cacheKey) : null;
+        if (cachade != null) {
+            logg().println("Hämtar från minnes-cache för " + cacheKey);
+            for (Elpris p : cachade) {
+                konsument.pris(p.timeStart().toEpochSecond(), p.timeStart().getOffset().getTotalSeconds(),
+                        p.timeEnd().toEpochSecond(), p.timeEnd().getOffset().getTotalSeconds(),
+                        p.sekPerKWh(), p.eurPerKWh(), p.exr());
             }
-            return priser;
+            return HamtningsStatus.OK;
+        }
 
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Ett fel inträffade vid hämtning av elpriser: " + e.getMessage());
-            // I ett produktionssystem skulle man vilja logga detta fel mer utförligt
-            Thread.currentThread().interrupt(); // Bra praxis vid InterruptedException
-            return Collections.emptyList();
+        DeladPrisCache delad = deladCache;
+        if (delad != null && delad.las(datum, prisklass, konsument) > 0) {
+            logg().println("Hämtar från delad cache för " + cacheKey);
+            return HamtningsStatus.OK;
+        }
+
+        if (mockResponseSupplier != null || !datedMockResponses.isEmpty()) {
+            logg().println("!!! ANVÄNDER MOCK-DATA FÖR TEST !!!");
+            String mockJson = datedMockResponses.getOrDefault(datum, mockResponseSupplier == null ? null : mockResponseSupplier.get());
+            if (mockJson == null || mockJson.isBlank()) {
+                return HamtningsStatus.INGEN_DATA;
+            }
+            return tolka(mockJson, konsument) > 0 ? HamtningsStatus.OK : HamtningsStatus.INGEN_DATA;
+        }
+
+        logg().println("Hämtar från nätverket för " + cacheKey);
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(buildUrl(datum, prisklass)))
+                .timeout(anropsTimeout).GET().build();
+        try {
+            return hamtaMedOmforsok(request, cacheKey, konsument).status();
+        } catch (InterruptedException e) {
+            System.err.println("Hämtningen av elpriser avbröts för " + cacheKey);
+            Thread.currentThread().interrupt();
+            return HamtningsStatus.FEL;
         }
     }
 
+    /**
+     * En lat ström över alla priser från och med {@code fran} till och med {@code till}.
+     * Dagarna hämtas först när strömmen når dem. Den delar sig genom att halvera de återstående
+     * dagarna, så en parallell ström hämtar och tolkar olika delar av intervallet på olika trådar.
+     */
+    public Stream<Elpris> prisStrom(LocalDate fran, LocalDate till, Prisklass prisklass) {
+        return StreamSupport.stream(new DagSpliterator(prisklass, fran.toEpochDay(), till.toEpochDay() + 1), false);
+    }
+
+    /**
+     * Ger ett beräknat resultat för dagar som redan är hämtade (t.ex. med {@link #hamtaDagar}),
+     * och kommer ihåg det. Samma fråga mot samma data beräknas bara en gång; när en dag i
+     * minnes-cachen ersätts (t.ex. när morgondagens priser dyker upp) glöms resultaten för den dagen.
+     * Inget hämtas här. Utan cachning, eller om en dag inte är den som ligger i minnes-cachen,
+     * beräknas resultatet varje gång.
+     *
+     * @param datum Första dagen.
+     * @param prisklass Elprisområdet.
+     * @param dagar En hämtning per dag från och med {@code datum}; priserna slås ihop i tidsordning
+     *              (dagar utan data bidrar inte).
+     * @param fraga Nyckel för frågan inklusive parametrar, t.ex. {@code List.of("laddning", 4)}. Måste ha equals/hashCode.
+     * @param berakning Beräkningen. Ett null-resultat sparas inte utan beräknas om nästa gång.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T harlett(LocalDate datum, Prisklass prisklass, List<Hamtning> dagar, Object fraga,
+                         Function<List<Elpris>, T> berakning) {
+        List<String> nycklar = new ArrayList<>(dagar.size());
+        List<Long> versioner = new ArrayList<>(dagar.size());
+        List<Elpris> allaPriser = new ArrayList<>();
+        boolean sparbar = cachingEnabled;
+        for (int i = 0; i < dagar.size(); i++) {
+            List<Elpris> priser = dagar.get(i).priser();
+            String cacheKey = getCacheKey(datum.plusDays(i), prisklass);
+            nycklar.add(cacheKey);
+            if (priser.isEmpty()) {
+                // Version 0 = dagen finns inte (ännu); den byts när dagen läggs i cachen
+                versioner.add(0L);
+            } else if (priser == inMemoryCache.get(cacheKey)) {
+                versioner.add(dataVersioner.getOrDefault(cacheKey, 0L));
+            } else {
+                sparbar = false; // okänd version, t.ex. en lista som inte kom från den här instansen
+            }
+            allaPriser.addAll(priser);
+        }
+        if (!sparbar) {
+            return berakning.apply(allaPriser);
+        }
+        HarleddNyckel nyckel = new HarleddNyckel(List.copyOf(nycklar), List.copyOf(versioner), fraga);
+        return (T) harleddaResultat.computeIfAbsent(nyckel, k -> berakning.apply(allaPriser));
+    }
+
     // --- Privata hjälpmetoder ---
 
+    // Lägger priserna i minnes-cachen och glömmer beräknade resultat som byggde på den tidigare posten.
+    // Är priserna samma som förut behålls versionen, och därmed de beräknade resultaten.
+    private void cachePut(String cacheKey, List<Elpris> priser) {
+        List<Elpris> tidigare = inMemoryCache.put(cacheKey, priser);
+        if (priser.equals(tidigare)) {
+            return;
+        }
+        dataVersioner.put(cacheKey, versionRaknare.incrementAndGet());
+        harleddaResultat.keySet().removeIf(k -> k.cacheKeys().contains(cacheKey));
+    }
+
+    /**
+     * Hämtar från nätverket via den processgemensamma sammanslagningen. Finns redan en hämtning
+     * av samma nyckel på gång (från vilken instans som helst) väntar vi på den. Annars läggs
+     * hämtningen i nästa våg, som skickas {@value #SAMLINGSFONSTER_MS} ms efter första missen,
+     * så att samtidiga missar för samma eller närliggande dagar går ut tillsammans.
+     * Avbryts alla som väntar på en hämtning avbryts också hämtningen, eller skickas aldrig.
+     */
+    private Hamtning hamtaSamlat(HttpRequest request, String cacheKey) throws InterruptedException {
+        Flygning flygning;
+        while (true) {
+            Flygning ny = new Flygning();
+            Flygning befintlig = PAGAENDE.putIfAbsent(cacheKey, ny);
+            if (befintlig == null) {
+                flygning = ny;
+                laggIVag(() -> flyg(ny, request, cacheKey));
+                break;
+            }
+            if (befintlig.anslut()) {
+                flygning = befintlig;
+                logg().println("Väntar på pågående hämtning för " + cacheKey);
+                break;
+            }
+            PAGAENDE.remove(cacheKey, befintlig); // övergiven, men inte bortplockad ännu
+        }
+        try {
+            return flygning.resultat.get();
+        } catch (ExecutionException e) {
+            System.err.println("Ett fel inträffade vid hämtning av elpriser: " + e.getCause().getMessage());
+            return Hamtning.utan(HamtningsStatus.FEL);
+        } catch (InterruptedException e) {
+            if (flygning.lamna()) {
+                PAGAENDE.remove(cacheKey, flygning);
+            }
+            throw e;
+        }
+    }
+
+    // Körs i vågen. Nyckeln tas bort innan resultatet sätts, så att ett anrop som kommer
+    // efter svaret gör en ny hämtning i stället för att få det gamla.
+    private void flyg(Flygning flygning, HttpRequest request, String cacheKey) {
+        if (!flygning.starta()) {
+            return; // alla som väntade har gett upp, inget skickas
+        }
+        Hamtning resultat = Hamtning.utan(HamtningsStatus.FEL);
+        RuntimeException fel = null;
+        try {
+            resultat = hamtaMedOmforsok(request, cacheKey, null);
+        } catch (InterruptedException e) {
+            // Alla som väntade har gett upp
+        } catch (RuntimeException e) {
+            fel = e;
+        } finally {
+            flygning.klar();
+            PAGAENDE.remove(cacheKey, flygning);
+        }
+        if (fel != null) {
+            flygning.resultat.completeExceptionally(fel);
+        } else {
+            flygning.resultat.complete(resultat);
+        }
+    }
+
+    private static void laggIVag(Runnable hamtning) {
+        synchronized (VAG_LAS) {
+            vag.add(hamtning);
+            if (vag.size() == 1) {
+                VAGSCHEMA.schedule(ElpriserAPI::skickaVag, SAMLINGSFONSTER_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void skickaVag() {
+        List<Runnable> attSkicka;
+        synchronized (VAG_LAS) {
+            attSkicka = vag;
+            vag = new ArrayList<>();
+        }
+        attSkicka.forEach(HAMTNINGAR::execute);
+    }
+
+    /**
+     * Skickar anropet och gör omförsök med exponentiell backoff och full jitter vid tidsgräns,
+     * nätverksfel, 429 och 5xx. Varje omförsök kostar ur den processgemensamma budgeten.
+     * Hela hämtningen har en gemensam tidsgräns; ett omförsök görs bara om det efter backoff
+     * finns minst en anropstidsgräns kvar.
+     * 404 betyder att priserna inte finns (ännu) och görs inget omförsök på.
+     * Med en {@code konsument} tolkas svaret direkt in i den och den returnerade listan är tom.
+     */
+    private Hamtning hamtaMedOmforsok(HttpRequest request, String cacheKey, PrisKonsument konsument) throws InterruptedException {
+        long deadline = System.nanoTime() + hamtningsTimeout.toNanos();
+        for (int forsok = 0; ; forsok++) {
+            HamtningsStatus status;
+            try {
+                HttpResponse<String> response = skickaMedHedge(request, deadline);
+                int statusKod = response.statusCode();
+
+                // Om sidan inte finns (t.ex. priser för morgondagen) returneras 404
+                if (statusKod == 404) {
+                    logg().println("Inga priser hittades för " + cacheKey + " (HTTP 404).");
+                    return Hamtning.utan(HamtningsStatus.INGEN_DATA);
+                }
+                // Villkorligt anrop och inget har ändrats: använd det vi redan har
+                if (statusKod == 304 && inMemoryCache.containsKey(cacheKey)) {
+                    FORSOK_BUDGET.lyckad();
+                    return new Hamtning(HamtningsStatus.OK, inMemoryCache.get(cacheKey));
+                }
+                if (statusKod == 200) {
+                    FORSOK_BUDGET.lyckad();
+                    String etag = response.headers().firstValue("ETag").orElse(null);
+                    String senastAndrad = response.headers().firstValue("Last-Modified").orElse(null);
+                    if (etag != null || senastAndrad != null) {
+                        validerare.put(cacheKey, new Validerare(etag, senastAndrad));
+                    }
+                    if (konsument != null) {
+                        return tolka(response.body(), konsument) > 0
+                                ? new Hamtning(HamtningsStatus.OK, Collections.emptyList())
+                                : Hamtning.utan(HamtningsStatus.INGEN_DATA);
+                    }
+                    List<Elpris> priser = parseSimpleJson(response.body());
+                    if (cachingEnabled && !priser.isEmpty()) {
+                        saveToDiskCache(cacheKey, response.body()); // Spara rådata till disk (framtida implementation)
+                    }
+                    return priser.isEmpty() ? Hamtning.utan(HamtningsStatus.INGEN_DATA) : new Hamtning(HamtningsStatus.OK, priser);
+                }
+                System.err.println("Misslyckades med att hämta priser. Statuskod: " + statusKod);
+                if (statusKod != 429 && statusKod < 500) {
+                    return Hamtning.utan(HamtningsStatus.FEL);
+                }
+                status = HamtningsStatus.FEL;
+            } catch (HttpTimeoutException e) {
+                System.err.println("Tidsgränsen överskreds vid hämtning av " + cacheKey);
+                status = HamtningsStatus.TIDSGRANS;
+            } catch (IOException e) {
+                System.err.println("Ett fel inträffade vid hämtning av elpriser: " + e.getMessage());
+                status = HamtningsStatus.FEL;
+            }
+
+            long vantaMs = ThreadLocalRandom.current().nextLong(OMFORSOK_BAS_MS << forsok) + 1;
+            if (forsok >= MAX_OMFORSOK
+                    || !hinnerAnrop(deadline, TimeUnit.MILLISECONDS.toNanos(vantaMs))
+                    || !FORSOK_BUDGET.forsokUttag()) {
+                return Hamtning.utan(status);
+            }
+            Thread.sleep(vantaMs);
+        }
+    }
+
+    /**
+     * Skickar anropet och, om inget svar kommit efter ungefär p95 av de senaste svarstiderna,
+     * ett identiskt andra anrop. Det första lyckade svaret används och det andra avbryts.
+     * Hedge-anropet skickas bara om det hinner få hela sin tidsgräns före {@code deadline}, och
+     * ingen väntan sträcker sig förbi den.
+     */
+    private HttpResponse<String> skickaMedHedge(HttpRequest request, long deadline) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> forsta = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> andra = null;
+        try {
+            long hedgeNanos = latenser.p95Nanos(MIN_LATENSER_FOR_HEDGE);
+            HttpResponse<String> svar;
+            if (hedgeNanos > 0 && hedgeNanos < deadline - start) {
+                try {
+                    svar = forsta.get(hedgeNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (hinnerAnrop(deadline, 0) && FORSOK_BUDGET.forsokUttag()) {
+                        andra = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+                        svar = vantaTill(forstaLyckade(forsta, andra), deadline);
+                    } else {
+                        svar = vantaTill(forsta, deadline);
+                    }
+                }
+            } else {
+                svar = vantaTill(forsta, deadline);
+            }
+            latenser.registrera(System.nanoTime() - start);
+            return svar;
+        } catch (ExecutionException e) {
+            Throwable orsak = e.getCause();
+            if (orsak instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(orsak);
+        } finally {
+            forsta.cancel(true);
+            if (andra != null) {
+                andra.cancel(true);
+            }
+        }
+    }
+
+    // true om ett nytt anrop, som startar om vantaNanos, hinner få hela sin tidsgräns före deadline
+    private boolean hinnerAnrop(long deadline, long vantaNanos) {
+        return deadline - System.nanoTime() - vantaNanos >= anropsTimeout.toNanos();
+    }
+
+    // Väntar på svaret, men inte förbi hämtningens deadline
+    private static <T> T vantaTill(CompletableFuture<T> svar, long deadline)
+            throws ExecutionException, InterruptedException, HttpTimeoutException {
+        try {
+            return svar.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new HttpTimeoutException("Hämtningens tidsgräns överskreds");
+        }
+    }
+
+    // Blir klar med det första lyckade svaret, eller med det sista felet om båda misslyckas
+    private static <T> CompletableFuture<T> forstaLyckade(CompletableFuture<T> a, CompletableFuture<T> b) {
+        CompletableFuture<T> resultat = new CompletableFuture<>();
+        AtomicInteger misslyckade = new AtomicInteger();
+        for (CompletableFuture<T> f : List.of(a, b)) {
+            f.whenComplete((v, fel) -> {
+                if (fel == null) {
+                    resultat.complete(v);
+                } else if (misslyckade.incrementAndGet() == 2) {
+                    resultat.completeExceptionally(fel);
+                }
+            });
+        }
+        return resultat;
+    }
+
     private String buildUrl(LocalDate datum, Prisklass prisklass) {
         String formattedDate = datum.format(URL_DATE_FORMATTER);
-        return String.format("%s/%s_%s.json", API_BASE_URL, formattedDate, prisklass.name());
+        return String.format("%s/%s_%s.json", basUrl, formattedDate, prisklass.name());
     }
     
     private String getCacheKey(LocalDate datum, Prisklass prisklass) {
@@ -223,50 +788,165 @@ public final class ElpriserAPI {
      */
     private List<Elpris> parseSimpleJson(String json) {
         List<Elpris> priser = new ArrayList<>();
-        // Ta bort yttre [ och ], samt eventuella blanksteg
-        String trimmedJson = json.trim();
-        if (!trimmedJson.startsWith("[") || !trimmedJson.endsWith("]")) {
-            return Collections.emptyList();
-        }
-        String content = trimmedJson.substring(1, trimmedJson.length() - 1).trim();
-        if (content.isEmpty()) {
-            return Collections.emptyList();
+        tolka(json, new PrisBygge(priser::add));
+        return priser;
+    }
+
+    /**
+     * Tolkar svaret ett objekt i taget och skickar varje pris direkt till konsumenten,
+     * utan att dela upp strängen eller bygga någon map. Objekt som inte kan tolkas hoppas över.
+     * @return antal priser som skickades.
+     */
+    static int tolka(String json, PrisKonsument konsument) {
+        // Kräv yttre [ och ], precis som förut
+        int forsta = 0, sista = json.length() - 1;
+        while (forsta <= sista && Character.isWhitespace(json.charAt(forsta))) forsta++;
+        while (sista >= forsta && Character.isWhitespace(json.charAt(sista))) sista--;
+        if (forsta >= sista || json.charAt(forsta) != '[' || json.charAt(sista) != ']') {
+            return 0;
         }
 
-        // Dela upp i enskilda JSON-objekt
-        String[] objects = content.split("}\\s*,\\s*\\{");
+        int antal = 0;
+        int pos = forsta + 1;
+        while (true) {
+            int objStart = json.indexOf('{', pos);
+            if (objStart < 0 || objStart > sista) {
+                return antal;
+            }
+            int objSlut = json.indexOf('}', objStart);
+            if (objSlut < 0) {
+                objSlut = sista;
+            }
+            pos = objSlut + 1;
 
-        for (String objStr : objects) {
-            // Rensa bort resterande { och }
-            String cleanObjStr = objStr.replace("{", "").replace("}", "");
-            
+            double sek = Double.NaN, eur = Double.NaN, exr = Double.NaN;
+            long start = 0, slut = 0;
+            int startOffset = 0, slutOffset = 0;
+            boolean harStart = false, harSlut = false;
             try {
-                // Skapa en temporär map för att hålla värdena för ett objekt
-                Map<String, String> valueMap = new java.util.HashMap<>();
-                String[] pairs = cleanObjStr.split(",");
-                for (String pair : pairs) {
-                    String[] keyValue = pair.split(":", 2);
-                    String key = keyValue[0].trim().replace("\"", "");
-                    String value = keyValue[1].trim().replace("\"", "");
-                    valueMap.put(key, value);
-                }
+                int i = objStart + 1;
+                while (true) {
+                    int nyckelStart = json.indexOf('"', i);
+                    if (nyckelStart < 0 || nyckelStart >= objSlut) break;
+                    // Allt måste ligga inom objektet. Annars kunde indexOf ge -1 eller ett tidigare
+                    // citattecken, och sökningen börja om bakåt och aldrig bli klar.
+                    int nyckelSlut = json.indexOf('"', nyckelStart + 1);
+                    if (nyckelSlut < 0 || nyckelSlut >= objSlut) throw new IllegalArgumentException("nyckeln tar inte slut");
+                    int kolon = json.indexOf(':', nyckelSlut);
+                    if (kolon < 0 || kolon >= objSlut) throw new IllegalArgumentException("kolon saknas");
+                    int v = kolon + 1;
+                    while (v < objSlut && Character.isWhitespace(json.charAt(v))) v++;
+                    if (v >= objSlut) throw new IllegalArgumentException("värde saknas");
+                    int vStart, vSlut;
+                    if (json.charAt(v) == '"') {
+                        vStart = v + 1;
+                        vSlut = json.indexOf('"', vStart);
+                        if (vSlut < 0 || vSlut >= objSlut) throw new IllegalArgumentException("värdet tar inte slut");
+                        i = vSlut + 1;
+                    } else {
+                        vStart = v;
+                        vSlut = v;
+                        while (vSlut < objSlut && json.charAt(vSlut) != ',') vSlut++;
+                        while (vSlut > vStart && Character.isWhitespace(json.charAt(vSlut - 1))) vSlut--;
+                        i = vSlut;
+                    }
 
-                // Skapa ett Elpris-objekt från värdena i mappen
-                priser.add(new Elpris(
-                    Double.parseDouble(valueMap.get("SEK_per_kWh")),
-                    Double.parseDouble(valueMap.get("EUR_per_kWh")),
-                    Double.parseDouble(valueMap.get("EXR")),
-                    ZonedDateTime.parse(valueMap.get("time_start")),
-                    ZonedDateTime.parse(valueMap.get("time_end"))
-                ));
-            } catch (Exception e) {
+                    int nyckelLangd = nyckelSlut - nyckelStart - 1;
+                    if (arNyckel(json, nyckelStart + 1, nyckelLangd, "SEK_per_kWh")) {
+                        sek = Double.parseDouble(json.substring(vStart, vSlut));
+                    } else if (arNyckel(json, nyckelStart + 1, nyckelLangd, "EUR_per_kWh")) {
+                        eur = Double.parseDouble(json.substring(vStart, vSlut));
+                    } else if (arNyckel(json, nyckelStart + 1, nyckelLangd, "EXR")) {
+                        exr = Double.parseDouble(json.substring(vStart, vSlut));
+                    } else if (arNyckel(json, nyckelStart + 1, nyckelLangd, "time_start")) {
+                        start = epochSekund(json, vStart, vSlut);
+                        startOffset = offsetSekunder(json, vStart, vSlut);
+                        harStart = true;
+                    } else if (arNyckel(json, nyckelStart + 1, nyckelLangd, "time_end")) {
+                        slut = epochSekund(json, vStart, vSlut);
+                        slutOffset = offsetSekunder(json, vStart, vSlut);
+                        harSlut = true;
+                    }
+                }
+                if (Double.isNaN(sek) || Double.isNaN(eur) || Double.isNaN(exr) || !harStart || !harSlut) {
+                    throw new IllegalArgumentException("fält saknas");
+                }
+            } catch (RuntimeException e) {
                 // Hoppa över objekt som inte kan parsas, logga ett fel
-                System.err.println("Kunde inte tolka ett elpris-objekt: " + cleanObjStr + " - Fel: " + e.getMessage());
+                System.err.println("Kunde inte tolka ett elpris-objekt: " + json.substring(objStart, Math.min(objSlut + 1, json.length())) + " - Fel: " + e.getMessage());
+                continue;
             }
+            konsument.pris(start, startOffset, slut, slutOffset, sek, eur, exr);
+            antal++;
         }
-        return priser;
     }
-    
+
+    private static boolean arNyckel(String json, int fran, int langd, String nyckel) {
+        return langd == nyckel.length() && json.regionMatches(fran, nyckel, 0, langd);
+    }
+
+    // "2025-09-04T13:00:00+02:00" räknas ut direkt; andra varianter går via OffsetDateTime
+    private static long epochSekund(String s, int fran, int till) {
+        if (!arKortTidsformat(s, fran, till)) {
+            return OffsetDateTime.parse(s.substring(fran, till)).toEpochSecond();
+        }
+        long dag = LocalDate.of(siffror(s, fran, 4), siffror(s, fran + 5, 2), siffror(s, fran + 8, 2)).toEpochDay();
+        long lokal = dag * 86400 + siffror(s, fran + 11, 2) * 3600L + siffror(s, fran + 14, 2) * 60L + siffror(s, fran + 17, 2);
+        return lokal - offsetSekunder(s, fran, till);
+    }
+
+    private static int offsetSekunder(String s, int fran, int till) {
+        if (!arKortTidsformat(s, fran, till)) {
+            return OffsetDateTime.parse(s.substring(fran, till)).getOffset().getTotalSeconds();
+        }
+        int sekunder = siffror(s, fran + 20, 2) * 3600 + siffror(s, fran + 23, 2) * 60;
+        return s.charAt(fran + 19) == '-' ? -sekunder : sekunder;
+    }
+
+    private static boolean arKortTidsformat(String s, int fran, int till) {
+        return till - fran == 25 && s.charAt(fran + 10) == 'T'
+                && (s.charAt(fran + 19) == '+' || s.charAt(fran + 19) == '-') && s.charAt(fran + 22) == ':';
+    }
+
+    private static int siffror(String s, int fran, int antal) {
+        int v = 0;
+        for (int i = fran; i < fran + antal; i++) {
+            int c = s.charAt(i) - '0';
+            if (c < 0 || c > 9) {
+                throw new NumberFormatException("Ogiltig tid: " + s.substring(fran, fran + antal));
+            }
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
+    /**
+     * Bygger Elpris-objekt ur primitiva värden. I en serie är ett intervalls slut nästa intervalls
+     * start, så den sluttiden återanvänds och det skapas bara en ZonedDateTime per intervall.
+     * Offseten kommer ur {@link Tider}s tabell.
+     */
+    private static final class PrisBygge implements PrisKonsument {
+        private final Consumer<? super Elpris> mottagare;
+        private ZonedDateTime foregSlut;
+        private long foregSlutSekund = Long.MIN_VALUE;
+        private int foregSlutOffset;
+
+        PrisBygge(Consumer<? super Elpris> mottagare) {
+            this.mottagare = mottagare;
+        }
+
+        @Override
+        public void pris(long start, int startOffset, long slut, int slutOffset, double sekPerKWh, double eurPerKWh, double exr) {
+            ZonedDateTime startTid = start == foregSlutSekund && startOffset == foregSlutOffset
+                    ? foregSlut
+                    : Tider.tid(start, startOffset);
+            foregSlut = Tider.tid(slut, slutOffset);
+            foregSlutSekund = slut;
+            foregSlutOffset = slutOffset;
+            mottagare.accept(new Elpris(sekPerKWh, eurPerKWh, exr, startTid, foregSlut));
+        }
+    }
+
     // --- Stub-metoder för disk-cache ---
     
     /**
@@ -299,6 +979,173 @@ public final class ElpriserAPI {
     }
 
 
+    /**
+     * Går igenom dagarna [dag, slut) lat. tryAdvance hämtar en dag i taget via {@link #getPriser},
+     * forEachRemaining skickar resten via {@link #forEachPris} utan listor. Delas genom att halvera dagarna.
+     */
+    private final class DagSpliterator implements Spliterator<Elpris> {
+        private final Prisklass prisklass;
+        private long dag;
+        private final long slut;
+        private List<Elpris> aktuell = List.of();
+        private int index;
+
+        DagSpliterator(Prisklass prisklass, long dag, long slut) {
+            this.prisklass = prisklass;
+            this.dag = dag;
+            this.slut = slut;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Elpris> action) {
+            while (index >= aktuell.size()) {
+                if (dag >= slut) {
+                    return false;
+                }
+                aktuell = getPriser(LocalDate.ofEpochDay(dag++), prisklass);
+                index = 0;
+            }
+            action.accept(aktuell.get(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Elpris> action) {
+            while (index < aktuell.size()) {
+                action.accept(aktuell.get(index++));
+            }
+            PrisBygge bygge = new PrisBygge(action);
+            while (dag < slut) {
+                forEachPris(LocalDate.ofEpochDay(dag++), prisklass, bygge);
+            }
+        }
+
+        @Override
+        public Spliterator<Elpris> trySplit() {
+            // Dela bara mellan hela dagar
+            if (index < aktuell.size() || slut - dag < 2) {
+                return null;
+            }
+            long mitt = dag + (slut - dag) / 2;
+            DagSpliterator forsta = new DagSpliterator(prisklass, dag, mitt);
+            dag = mitt;
+            return forsta;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Ungefär 24 timpriser per dag (96 med kvartspriser)
+            return (slut - dag) * 24 + (aktuell.size() - index);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * En hämtning i en våg och de som väntar på den. Går den sista väntande innan hämtningen
+     * är klar avbryts tråden som hämtar (och därmed HTTP-anropet), eller så startar den aldrig.
+     */
+    private static final class Flygning {
+        final CompletableFuture<Hamtning> resultat = new CompletableFuture<>();
+        private int vantande = 1;
+        private boolean overgiven;
+        private Thread hamtare;
+
+        // false om hämtningen redan är övergiven och inte kan anslutas till
+        synchronized boolean anslut() {
+            if (overgiven) {
+                return false;
+            }
+            vantande++;
+            return true;
+        }
+
+        // true om den som lämnar var den sista, så att hämtningen övergavs
+        synchronized boolean lamna() {
+            if (--vantande > 0 || resultat.isDone()) {
+                return false;
+            }
+            overgiven = true;
+            if (hamtare != null) {
+                hamtare.interrupt();
+            }
+            return true;
+        }
+
+        synchronized boolean starta() {
+            if (overgiven) {
+                return false;
+            }
+            hamtare = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void klar() {
+            hamtare = null;
+        }
+    }
+
+    /**
+     * Ringbuffert med de senaste svarstiderna, för att räkna ut p95.
+     */
+    private static final class Latenser {
+        private final long[] nanos;
+        private int nasta;
+        private int antal;
+
+        Latenser(int storlek) {
+            this.nanos = new long[storlek];
+        }
+
+        synchronized void registrera(long n) {
+            nanos[nasta] = n;
+            nasta = (nasta + 1) % nanos.length;
+            antal = Math.min(antal + 1, nanos.length);
+        }
+
+        // 0 om det finns för få mätningar för att säga något
+        synchronized long p95Nanos(int minstAntal) {
+            if (antal < minstAntal) {
+                return 0;
+            }
+            long[] sorterade = Arrays.copyOf(nanos, antal);
+            Arrays.sort(sorterade);
+            return sorterade[(int) Math.ceil(antal * 0.95) - 1];
+        }
+    }
+
+    /**
+     * Token-budget för omförsök: varje lyckat anrop sparar en tiondels token, varje omförsök
+     * eller hedge-anrop kostar en hel. Omförsök blir alltså högst ~10 % av trafiken i längden.
+     */
+    private static final class ForsokBudget {
+        private static final long TOKEN = 1000;
+        private static final long MAX = 10 * TOKEN;
+        private final AtomicLong milliTokens = new AtomicLong(MAX);
+
+        void fyll() {
+            milliTokens.set(MAX);
+        }
+
+        void lyckad() {
+            milliTokens.updateAndGet(t -> Math.min(MAX, t + TOKEN / 10));
+        }
+
+        boolean forsokUttag() {
+            long t;
+            do {
+                t = milliTokens.get();
+                if (t < TOKEN) {
+                    return false;
+                }
+            } while (!milliTokens.compareAndSet(t, t - TOKEN));
+            return true;
+        }
+    }
+
     // --- Exempel på användning ---
 
     public static void main(String[] args) {
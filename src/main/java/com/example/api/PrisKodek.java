@@ -0,0 +1,280 @@
+package com.example.api;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kompakt binärformat för en sammanhängande prisserie (t.ex. en zon-dag), tänkt för arkiv och disk-cache.
+ * I stället för ~150 byte JSON per intervall lagras:
+ * <ul>
+ *   <li>starttid (epoch-sekunder) och intervallängd en gång, i stället för time_start/time_end per rad</li>
+ *   <li>en EXR per block</li>
+ *   <li>UTC-offseten som en kort lista av byten (en post normalt, två vid sommartidsomställning)</li>
+ *   <li>SEK- och EUR-priserna XOR-kodade mot föregående värde som i Facebooks Gorilla</li>
+ * </ul>
+ * Avkodningen ger exakt samma {@link ElpriserAPI.Elpris}-objekt (enligt equals) som kodades.
+ * Serien måste vara regelbunden: lika långa intervall utan luckor, samma EXR och
+ * time_end lika med nästa intervalls start. Annars kastas {@link IllegalArgumentException}.
+ */
+public final class PrisKodek {
+
+    private static final int MAGIC = 0x454C504B; // "ELPK"
+    private static final byte VERSION = 1;
+
+    private PrisKodek() {
+    }
+
+    /**
+     * Tidsaxeln för en regelbunden serie: start, intervallängd, EXR och offsetbyten som (index, sekunder)-par.
+     * Delas med {@link DeladPrisCache}, som lagrar samma uppgifter i fasta fält.
+     */
+    record Serie(long start, int intervall, double exr, int[] bytenIndex, int[] bytenOffset) {}
+
+    /**
+     * Kodar en regelbunden prisserie till ett block.
+     */
+    public static byte[] koda(List<ElpriserAPI.Elpris> priser) {
+        Serie serie = analysera(priser);
+        int antal = priser.size();
+        int antalByten = serie.bytenIndex().length;
+
+        BitSkrivare bitar = new BitSkrivare(antal * 4 + 16);
+        xorKoda(bitar, priser, true);
+        xorKoda(bitar, priser, false);
+        byte[] data = bitar.toByteArray();
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + 1 + 8 + 4 + 4 + 8 + 2 + antalByten * 8 + data.length);
+        buf.putInt(MAGIC).put(VERSION)
+                .putLong(serie.start()).putInt(serie.intervall()).putInt(antal)
+                .putDouble(serie.exr())
+                .putShort((short) antalByten);
+        for (int i = 0; i < antalByten; i++) {
+            buf.putInt(serie.bytenIndex()[i]).putInt(serie.bytenOffset()[i]);
+        }
+        buf.put(data);
+        return buf.array();
+    }
+
+    /**
+     * Avkodar ett block som skapats med {@link #koda(List)}.
+     */
+    public static List<ElpriserAPI.Elpris> avkoda(byte[] block) {
+        ByteBuffer buf = ByteBuffer.wrap(block);
+        if (buf.getInt() != MAGIC || buf.get() != VERSION) {
+            throw new IllegalArgumentException("Okänt blockformat");
+        }
+        long start = buf.getLong();
+        int intervall = buf.getInt();
+        int antal = buf.getInt();
+        double exr = buf.getDouble();
+        int antalByten = buf.getShort();
+        int[] bytenIndex = new int[antalByten];
+        int[] bytenOffset = new int[antalByten];
+        for (int i = 0; i < antalByten; i++) {
+            bytenIndex[i] = buf.getInt();
+            bytenOffset[i] = buf.getInt();
+        }
+
+        BitLasare bitar = new BitLasare(block, buf.position());
+        double[] sek = xorAvkoda(bitar, antal);
+        double[] eur = xorAvkoda(bitar, antal);
+        return bygg(new Serie(start, intervall, exr, bytenIndex, bytenOffset), sek, eur, antal);
+    }
+
+    /**
+     * Kontrollerar att serien är regelbunden och plockar ut dess tidsaxel.
+     * @throws IllegalArgumentException om serien är tom eller inte regelbunden.
+     */
+    static Serie analysera(List<ElpriserAPI.Elpris> priser) {
+        if (priser == null || priser.isEmpty()) {
+            throw new IllegalArgumentException("Kan inte koda en tom prisserie");
+        }
+        int antal = priser.size();
+        ElpriserAPI.Elpris forsta = priser.get(0);
+        long start = forsta.timeStart().toEpochSecond();
+        long intervall = Duration.between(forsta.timeStart(), forsta.timeEnd()).getSeconds();
+        if (intervall <= 0 || intervall > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Ogiltig intervallängd: " + intervall + " s");
+        }
+        double exr = forsta.exr();
+
+        int[] bytenIndex = new int[4];
+        int[] bytenOffset = new int[4];
+        int antalByten = 0;
+
+        for (int i = 0; i < antal; i++) {
+            ElpriserAPI.Elpris p = priser.get(i);
+            if (p.timeStart().toEpochSecond() != start + i * intervall) {
+                throw new IllegalArgumentException("Prisserien är inte regelbunden vid index " + i);
+            }
+            if (Double.doubleToRawLongBits(p.exr()) != Double.doubleToRawLongBits(exr)) {
+                throw new IllegalArgumentException("Olika EXR inom samma block vid index " + i);
+            }
+            if (!(p.timeStart().getZone() instanceof ZoneOffset offset)) {
+                throw new IllegalArgumentException("Tidszonen måste vara en fast offset: " + p.timeStart());
+            }
+            int sekunder = offset.getTotalSeconds();
+            if (antalByten == 0 || bytenOffset[antalByten - 1] != sekunder) {
+                if (antalByten == bytenIndex.length) {
+                    bytenIndex = Arrays.copyOf(bytenIndex, antalByten * 2);
+                    bytenOffset = Arrays.copyOf(bytenOffset, antalByten * 2);
+                }
+                bytenIndex[antalByten] = i;
+                bytenOffset[antalByten] = sekunder;
+                antalByten++;
+            }
+        }
+        // time_end härleds vid avkodning, så den måste stämma exakt (jämförs utan att skapa några tider)
+        for (int i = 0; i < antal; i++) {
+            ZonedDateTime slut = priser.get(i).timeEnd();
+            ZoneId slutOffset = priser.get(i + 1 < antal ? i + 1 : i).timeStart().getZone();
+            if (slut.toEpochSecond() != start + (i + 1) * intervall || !slut.getZone().equals(slutOffset)) {
+                throw new IllegalArgumentException("time_end följer inte nästa intervalls start vid index " + i);
+            }
+        }
+        return new Serie(start, (int) intervall, exr,
+                Arrays.copyOf(bytenIndex, antalByten), Arrays.copyOf(bytenOffset, antalByten));
+    }
+
+    /**
+     * Bygger Elpris-objekt från tidsaxeln och de primitiva prisarrayerna.
+     * Slutet på ett intervall är samma objekt som nästa intervalls start.
+     */
+    static List<ElpriserAPI.Elpris> bygg(Serie serie, double[] sek, double[] eur, int antal) {
+        int[] bytenIndex = serie.bytenIndex();
+        int[] bytenOffset = serie.bytenOffset();
+        ZonedDateTime[] starter = new ZonedDateTime[antal + 1];
+        int aktuell = 0;
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(bytenOffset[0]);
+        for (int i = 0; i <= antal; i++) {
+            if (i < antal && aktuell + 1 < bytenIndex.length && bytenIndex[aktuell + 1] <= i) {
+                aktuell++;
+                offset = ZoneOffset.ofTotalSeconds(bytenOffset[aktuell]);
+            }
+            starter[i] = ZonedDateTime.ofInstant(Instant.ofEpochSecond(serie.start() + (long) i * serie.intervall()), offset);
+        }
+
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>(antal);
+        for (int i = 0; i < antal; i++) {
+            priser.add(new ElpriserAPI.Elpris(sek[i], eur[i], serie.exr(), starter[i], starter[i + 1]));
+        }
+        return priser;
+    }
+
+    // --- Gorilla XOR-kodning ---
+
+    // Första värdet skrivs rått. Därefter XOR mot föregående:
+    // '0' = samma värde, '10' = signifikanta bitar ryms i föregående fönster,
+    // '11' + 5 bitar ledande nollor + 6 bitar längd-1 + de signifikanta bitarna.
+    private static void xorKoda(BitSkrivare ut, List<ElpriserAPI.Elpris> priser, boolean sek) {
+        long foreg = bitsAv(priser.get(0), sek);
+        ut.skriv(foreg, 64);
+        int foregLedande = -1, foregSlut = 0;
+        for (int i = 1; i < priser.size(); i++) {
+            long v = bitsAv(priser.get(i), sek);
+            long xor = v ^ foreg;
+            foreg = v;
+            if (xor == 0) {
+                ut.skriv(0, 1);
+                continue;
+            }
+            int ledande = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int slut = Long.numberOfTrailingZeros(xor);
+            if (foregLedande >= 0 && ledande >= foregLedande && slut >= foregSlut) {
+                ut.skriv(0b10, 2);
+                ut.skriv(xor >>> foregSlut, 64 - foregLedande - foregSlut);
+            } else {
+                int signifikanta = 64 - ledande - slut;
+                ut.skriv(0b11, 2);
+                ut.skriv(ledande, 5);
+                ut.skriv(signifikanta - 1, 6);
+                ut.skriv(xor >>> slut, signifikanta);
+                foregLedande = ledande;
+                foregSlut = slut;
+            }
+        }
+    }
+
+    private static double[] xorAvkoda(BitLasare in, int antal) {
+        double[] v = new double[antal];
+        long foreg = in.las(64);
+        v[0] = Double.longBitsToDouble(foreg);
+        int ledande = 0, slut = 0;
+        for (int i = 1; i < antal; i++) {
+            if (in.las(1) != 0) {
+                if (in.las(1) != 0) {
+                    ledande = (int) in.las(5);
+                    int signifikanta = (int) in.las(6) + 1;
+                    slut = 64 - ledande - signifikanta;
+                }
+                foreg ^= in.las(64 - ledande - slut) << slut;
+            }
+            v[i] = Double.longBitsToDouble(foreg);
+        }
+        return v;
+    }
+
+    private static long bitsAv(ElpriserAPI.Elpris p, boolean sek) {
+        return Double.doubleToRawLongBits(sek ? p.sekPerKWh() : p.eurPerKWh());
+    }
+
+    // Skriver bitar med mest signifikant bit först
+    private static final class BitSkrivare {
+        private byte[] buf;
+        private long antalBitar;
+
+        BitSkrivare(int kapacitet) {
+            buf = new byte[Math.max(kapacitet, 16)];
+        }
+
+        // Skriver de n lägsta bitarna i varde, upp till en byte i taget
+        void skriv(long varde, int n) {
+            while (n > 0) {
+                int byteIndex = (int) (antalBitar >>> 3);
+                if (byteIndex == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int ledigt = 8 - (int) (antalBitar & 7);
+                int k = Math.min(ledigt, n);
+                int bitar = (int) ((varde >>> (n - k)) & ((1 << k) - 1));
+                buf[byteIndex] |= (byte) (bitar << (ledigt - k));
+                n -= k;
+                antalBitar += k;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, (int) ((antalBitar + 7) >>> 3));
+        }
+    }
+
+    private static final class BitLasare {
+        private final byte[] buf;
+        private long position;
+
+        BitLasare(byte[] buf, int byteOffset) {
+            this.buf = buf;
+            this.position = (long) byteOffset << 3;
+        }
+
+        long las(int n) {
+            long v = 0;
+            while (n > 0) {
+                int kvar = 8 - (int) (position & 7);
+                int k = Math.min(kvar, n);
+                int bitar = ((buf[(int) (position >>> 3)] & 0xFF) >>> (kvar - k)) & ((1 << k) - 1);
+                v = (v << k) | bitar;
+                n -= k;
+                position += k;
+            }
+            return v;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Gemensam tidshantering för tolkning och utskrift av priser.
+ * <ul>
+ *   <li>Etiketterna "HH" och "HH:mm" slås upp i förberäknade tabeller per timme respektive minut
+ *       på dygnet, i stället för att formateras med en DateTimeFormatter för varje rad.</li>
+ *   <li>Intervallängden för en serie räknas ut på ett ställe.</li>
+ * </ul>
+ */
+public final class Tider {
+
+    private static final String[] TIMMAR = new String[24];
+    private static final String[] MINUTER = new String[24 * 60];
+
+    static {
+        for (int h = 0; h < 24; h++) {
+            TIMMAR[h] = String.format("%02d", h);
+            for (int m = 0; m < 60; m++) {
+                MINUTER[h * 60 + m] = String.format("%02d:%02d", h, m);
+            }
+        }
+    }
+
+    private Tider() {
+    }
+
+    /**
+     * En tidpunkt i epoch-sekunder med en given offset, som i API:ets svar.
+     * {@link ZoneOffset#ofTotalSeconds} återanvänder redan samma instans för hela kvartar.
+     */
+    public static ZonedDateTime tid(long epochSekund, int offsetSekunder) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSekund), ZoneOffset.ofTotalSeconds(offsetSekunder));
+    }
+
+    /** "HH", t.ex. "07". */
+    public static String timme(ZonedDateTime tid) {
+        return TIMMAR[tid.getHour()];
+    }
+
+    /** "HH:mm", t.ex. "07:15". */
+    public static String minut(ZonedDateTime tid) {
+        return MINUTER[tid.getHour() * 60 + tid.getMinute()];
+    }
+
+    /**
+     * Intervallängden i sekunder: avståndet mellan de två första starttiderna, annars första
+     * intervallets längd, annars en timme.
+     */
+    public static long intervallSekunder(List<ElpriserAPI.Elpris> lista) {
+        ElpriserAPI.Elpris forsta = lista.get(0);
+        Duration d = lista.size() > 1
+                ? Duration.between(forsta.timeStart(), lista.get(1).timeStart())
+                : Duration.between(forsta.timeStart(), forsta.timeEnd());
+        return d.getSeconds() > 0 ? d.getSeconds() : 3600;
+    }
+}
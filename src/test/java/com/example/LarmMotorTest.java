@@ -0,0 +1,178 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class LarmMotorTest {
+
+    private static final ZonedDateTime MIDNATT = ZonedDateTime.parse("2025-09-04T00:00:00+02:00");
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void under_firesOncePerSubscription_atFirstIntervalBelowThreshold() {
+        LarmMotor motor = new LarmMotor();
+        List<LarmMotor.Larm> larm = new ArrayList<>();
+        motor.laggTillLyssnare(larm::add);
+
+        long under20 = motor.prenumereraUnder(ElpriserAPI.Prisklass.SE4, 20);
+        long under50 = motor.prenumereraUnder(ElpriserAPI.Prisklass.SE4, 50);
+        motor.prenumereraUnder(ElpriserAPI.Prisklass.SE4, 5);
+        motor.prenumereraUnder(ElpriserAPI.Prisklass.SE3, 100);
+
+        int antal = motor.utvardera(ElpriserAPI.Prisklass.SE4, timpriser(60, 40, 15, 10, 30));
+
+        assertThat(antal).isEqualTo(2);
+        assertThat(larm).extracting(LarmMotor.Larm::prenumeration).containsExactly(under50, under20);
+        assertThat(larm.get(0).tid()).isEqualTo(MIDNATT.plusHours(1));
+        assertThat(larm.get(0).orePerKWh()).isCloseTo(40, within(1e-9));
+        assertThat(larm.get(1).tid()).isEqualTo(MIDNATT.plusHours(2));
+        assertThat(larm).allMatch(l -> l.zon() == ElpriserAPI.Prisklass.SE4);
+    }
+
+    @Test
+    void under_priceEqualToThreshold_doesNotFire() {
+        LarmMotor motor = new LarmMotor();
+        List<LarmMotor.Larm> larm = new ArrayList<>();
+        motor.laggTillLyssnare(larm::add);
+        motor.prenumereraUnder(ElpriserAPI.Prisklass.SE3, 30);
+
+        assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE3, timpriser(30, 30, 30))).isZero();
+        assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE3, timpriser(30, 29.99, 30))).isEqualTo(1);
+        assertThat(larm.get(0).tid()).isEqualTo(MIDNATT.plusHours(1));
+    }
+
+    @Test
+    void snittOver_usesRollingWindow_andReportsWindowStart() {
+        LarmMotor motor = new LarmMotor();
+        List<LarmMotor.Larm> larm = new ArrayList<>();
+        motor.laggTillLyssnare(larm::add);
+
+        // 3h-snitten: 20, 40, 60, 80
+        long over50 = motor.prenumereraSnittOver(ElpriserAPI.Prisklass.SE3, 3, 50);
+        long over30 = motor.prenumereraSnittOver(ElpriserAPI.Prisklass.SE3, 3, 30);
+        motor.prenumereraSnittOver(ElpriserAPI.Prisklass.SE3, 3, 80);
+        // 1h-priset når aldrig över 150
+        motor.prenumereraSnittOver(ElpriserAPI.Prisklass.SE3, 1, 150);
+
+        int antal = motor.utvardera(ElpriserAPI.Prisklass.SE3, timpriser(0, 20, 40, 60, 80, 100));
+
+        // Ett snitt exakt på gränsen (80) larmar inte
+        assertThat(antal).isEqualTo(2);
+        assertThat(larm).extracting(LarmMotor.Larm::prenumeration).containsExactly(over30, over50);
+        assertThat(larm.get(0).tid()).isEqualTo(MIDNATT.plusHours(1));
+        assertThat(larm.get(0).orePerKWh()).isCloseTo(40, within(1e-9));
+        assertThat(larm.get(1).tid()).isEqualTo(MIDNATT.plusHours(2));
+        assertThat(larm.get(1).orePerKWh()).isCloseTo(60, within(1e-9));
+    }
+
+    @Test
+    void snittOver_withQuarterPrices_windowCoversWholeHours() {
+        LarmMotor motor = new LarmMotor();
+        List<LarmMotor.Larm> larm = new ArrayList<>();
+        motor.laggTillLyssnare(larm::add);
+        motor.prenumereraSnittOver(ElpriserAPI.Prisklass.SE1, 2, 50);
+
+        // 96 kvartar på 10 öre, utom de åtta kvartarna 07:00–09:00 som kostar 100 öre
+        double[] ore = new double[96];
+        Arrays.fill(ore, 10);
+        for (int i = 28; i < 36; i++) ore[i] = 100;
+        List<ElpriserAPI.Elpris> priser = priser(Duration.ofMinutes(15), ore);
+
+        assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE1, priser)).isEqualTo(1);
+        // 2h = 8 kvartar; första fönstret med snitt > 50 är 06:00–08:00 (4 av 8 kvartar på 100 ger 55)
+        assertThat(larm.get(0).tid()).isEqualTo(MIDNATT.plusHours(6));
+        assertThat(larm.get(0).orePerKWh()).isCloseTo(55, within(1e-9));
+    }
+
+    @Test
+    void subscriptionsAddedAfterEvaluation_areSortedAndUsedNextTime() {
+        LarmMotor motor = new LarmMotor();
+        List<LarmMotor.Larm> larm = new ArrayList<>();
+        motor.laggTillLyssnare(larm::add);
+
+        motor.prenumereraUnder(ElpriserAPI.Prisklass.SE2, 10);
+        assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE2, timpriser(20, 15))).isZero();
+
+        long under18 = motor.prenumereraUnder(ElpriserAPI.Prisklass.SE2, 18);
+        long under25 = motor.prenumereraUnder(ElpriserAPI.Prisklass.SE2, 25);
+        assertThat(motor.antalPrenumerationer()).isEqualTo(3);
+
+        assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE2, timpriser(20, 15))).isEqualTo(2);
+        assertThat(larm).extracting(LarmMotor.Larm::prenumeration).containsExactly(under25, under18);
+    }
+
+    @Test
+    void millionSubscriptions_matchBruteForce() {
+        LarmMotor motor = new LarmMotor();
+        int[] antalLarm = new int[1];
+        motor.laggTillLyssnare(l -> antalLarm[0]++);
+
+        Random slump = new Random(42);
+        double[] ore = new double[96];
+        for (int i = 0; i < ore.length; i++) ore[i] = slump.nextDouble() * 200;
+        double lagsta = Arrays.stream(ore).min().orElseThrow();
+
+        int n = 1_000_000;
+        int forvantat = 0;
+        for (int i = 0; i < n; i++) {
+            double troskel = slump.nextDouble() * 200;
+            motor.prenumereraUnder(ElpriserAPI.Prisklass.SE3, troskel);
+            if (troskel > lagsta) forvantat++;
+        }
+        int forvantatLarm = forvantat;
+        List<ElpriserAPI.Elpris> priser = priser(Duration.ofMinutes(15), ore);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThat(motor.utvardera(ElpriserAPI.Prisklass.SE3, priser)).isEqualTo(forvantatLarm);
+        });
+        assertThat(antalLarm[0]).isEqualTo(forvantatLarm);
+    }
+
+    @Test
+    void filLyssnare_writesOneLinePerAlert() throws Exception {
+        Path fil = tmp.resolve("larm.txt");
+        LarmMotor motor = new LarmMotor();
+        long id;
+        try (LarmMotor.FilLyssnare lyssnare = LarmMotor.tillFil(fil)) {
+            motor.laggTillLyssnare(lyssnare);
+            id = motor.prenumereraUnder(ElpriserAPI.Prisklass.SE4, 20);
+            motor.utvardera(ElpriserAPI.Prisklass.SE4, timpriser(30, 12.5));
+        }
+
+        assertThat(Files.readAllLines(fil))
+                .containsExactly(id + ";SE4;2025-09-04T01:00+02:00;12.50");
+    }
+
+    // --- Hjälpmetoder ---
+
+    private static List<ElpriserAPI.Elpris> timpriser(double... ore) {
+        return priser(Duration.ofHours(1), ore);
+    }
+
+    private static List<ElpriserAPI.Elpris> priser(Duration langd, double... ore) {
+        List<ElpriserAPI.Elpris> lista = new ArrayList<>();
+        ZonedDateTime start = MIDNATT;
+        for (double o : ore) {
+            ZonedDateTime slut = start.plus(langd);
+            lista.add(new ElpriserAPI.Elpris(o / 100, o / 1100, 11.0, start, slut));
+            start = slut;
+        }
+        return lista;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LopandeStatistikTest {
+
+    @Test
+    void withoutWindow_givesSameMinMaxAndMean_asWithWindow() {
+        Random slump = new Random(7);
+        LopandeStatistik utan = new LopandeStatistik(0);
+        LopandeStatistik med = new LopandeStatistik(4);
+        double summa = 0;
+        // Flera år av kvartspriser
+        int n = 4 * 96 * 365;
+        for (int i = 0; i < n; i++) {
+            double pris = slump.nextInt(300) / 100.0;
+            summa += pris;
+            utan.lagg(pris);
+            med.lagg(pris);
+        }
+
+        assertThat(utan.antal()).isEqualTo(n);
+        assertThat(utan.min()).isEqualTo(med.min());
+        assertThat(utan.max()).isEqualTo(med.max());
+        assertThat(utan.minIndex()).isEqualTo(med.minIndex());
+        assertThat(utan.maxIndex()).isEqualTo(med.maxIndex());
+        assertThat(utan.medel()).isEqualTo(med.medel()).isCloseTo(summa / n, within(1e-9));
+        assertThat(utan.laddfonsterStart()).isEqualTo(-1);
+        assertThat(utan.laddfonsterMedel()).isNaN();
+    }
+
+    @Test
+    void laddfonster_findsCheapestWindow_earliestOnTie() {
+        LopandeStatistik statistik = new LopandeStatistik(2);
+        for (double pris : new double[]{0.5, 0.1, 0.3, 0.9, 0.2, 0.2, 0.4}) {
+            statistik.lagg(pris);
+        }
+
+        assertThat(statistik.laddfonsterStart()).isEqualTo(1);
+        assertThat(statistik.laddfonsterMedel()).isCloseTo(0.2, within(1e-9));
+    }
+}
@@ -10,6 +10,7 @@ import java.io.PrintStream;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -74,6 +75,48 @@ class MainTest {
         assertTrue(priser.isEmpty());
     }
 
+    @Test
+    void harlett_reusesResult_untilTomorrowsDataArrives() {
+        LocalDate today = LocalDate.of(2025, 9, 4);
+        ElpriserAPI.setMockResponseForDate(today, """
+                [{"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"}]""");
+        ElpriserAPI api = new ElpriserAPI();
+        int[] berakningar = {0};
+
+        List<ElpriserAPI.Hamtning> dagar = api.hamtaDagar(today, 2, ElpriserAPI.Prisklass.SE3);
+        bos.reset();
+        Integer forsta = api.harlett(today, ElpriserAPI.Prisklass.SE3, dagar, "antal", l -> { berakningar[0]++; return l.size(); });
+        Integer andra = api.harlett(today, ElpriserAPI.Prisklass.SE3, dagar, "antal", l -> { berakningar[0]++; return l.size(); });
+
+        assertThat(forsta).isEqualTo(1);
+        assertThat(andra).isEqualTo(1);
+        assertThat(berakningar[0]).isEqualTo(1);
+        // harlett hämtar inget själv, så inget loggas
+        assertThat(bos.toString()).isEmpty();
+
+        ElpriserAPI.setMockResponseForDate(today.plusDays(1), """
+                [{"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-09-05T00:00:00+02:00","time_end":"2025-09-05T01:00:00+02:00"}]""");
+        dagar = api.hamtaDagar(today, 2, ElpriserAPI.Prisklass.SE3);
+        Integer efterUppdatering = api.harlett(today, ElpriserAPI.Prisklass.SE3, dagar, "antal", l -> { berakningar[0]++; return l.size(); });
+
+        assertThat(efterUppdatering).isEqualTo(2);
+        assertThat(berakningar[0]).isEqualTo(2);
+    }
+
+    @Test
+    void defaultMode_fetchesEachDayOnce_andLogsNothingBetweenResults() {
+        LocalDate today = LocalDate.of(2025, 9, 4);
+        String json = """
+                [{"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},{"SEK_per_kWh":0.05,"EUR_per_kWh":0.005,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"}]""";
+        ElpriserAPI.setMockResponseForDate(today, json);
+
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04"});
+
+        String output = bos.toString();
+        assertThat(output.split("!!! ANVÄNDER MOCK-DATA FÖR TEST !!!", -1)).hasSize(3); // idag och imorgon, en gång var
+        assertThat(output).doesNotContain("Hämtar från minnes-cache");
+    }
+
     @Test
     void showHelp_whenNoArguments() {
         Main.main(new String[]{});
@@ -189,6 +232,33 @@ class MainTest {
         assertThat(actualSortedLines).containsExactlyElementsOf(expectedOrder);
     }
 
+    @Test
+    void displayTopAndBottomPrices_earliestWinsOnTie() {
+        String mockJson = """
+                [{"SEK_per_kWh":0.30,"EUR_per_kWh":0.03,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"},
+                 {"SEK_per_kWh":0.50,"EUR_per_kWh":0.05,"EXR":10.0,"time_start":"2025-09-04T02:00:00+02:00","time_end":"2025-09-04T03:00:00+02:00"},
+                 {"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T03:00:00+02:00","time_end":"2025-09-04T04:00:00+02:00"},
+                 {"SEK_per_kWh":0.30,"EUR_per_kWh":0.03,"EXR":10.0,"time_start":"2025-09-04T04:00:00+02:00","time_end":"2025-09-04T05:00:00+02:00"}]""";
+
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), mockJson);
+
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--top", "2", "--bottom", "3"});
+
+        List<String> lines = Arrays.stream(bos.toString().split("\n"))
+                .map(String::trim)
+                .filter(line -> line.matches("^\\d{2}-\\d{2}\\s+\\d+,\\d{2}\\s+öre$"))
+                .collect(Collectors.toList());
+
+        assertThat(lines).containsExactly(
+                "02-03 50,00 öre",
+                "00-01 30,00 öre",
+                "01-02 10,00 öre",
+                "03-04 10,00 öre",
+                "00-01 30,00 öre"
+        );
+    }
+
     @Test
     void findOptimalCharging2Hours() {
         String mockJson = """
@@ -295,6 +365,210 @@ class MainTest {
         assertThat(output).contains("Medelpris för fönster: " + expectedAvgStr + " öre");
     }
 
+    @Test
+    void compareAllZones_showsTableAndSpread() {
+        String mockJson = """
+                [{"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"}]""";
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), mockJson);
+
+        Main.main(new String[]{"--zone", "ALL", "--date", "2025-09-04"});
+
+        String output = bos.toString();
+        assertThat(output).contains(String.format("Tid   %8s %8s %8s %8s %10s", "SE1", "SE2", "SE3", "SE4", "Spridning"));
+        // Samma priser i alla zoner: ingen spridning, och vid lika vinner det tidigaste intervallet
+        assertThat(output).contains(String.format("00:00 %8s %8s %8s %8s %10s", "10,00", "10,00", "10,00", "10,00", "0,00"));
+        assertThat(output).contains(String.format("01:00 %8s %8s %8s %8s %10s", "20,00", "20,00", "20,00", "20,00", "0,00"));
+        assertThat(output).contains("Medelspridning: 0,00 öre");
+        assertThat(output).contains("Största spridning: 0,00 öre Kl: 00:00");
+    }
+
+    @Test
+    void compareAllZones_showsSpreadPerIntervalAndLargest() {
+        ZonedDateTime t0 = ZonedDateTime.parse("2025-09-04T00:00:00+02:00");
+        Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> perZon = new EnumMap<>(ElpriserAPI.Prisklass.class);
+        double[][] ore = {{10, 20, 30}, {12, 20, 35}, {15, 45, 30}, {10, 80, 40}};
+        for (ElpriserAPI.Prisklass zon : ElpriserAPI.Prisklass.values()) {
+            List<ElpriserAPI.Elpris> priser = new ArrayList<>();
+            for (int timme = 0; timme < 3; timme++) {
+                double sek = ore[zon.ordinal()][timme] / 100;
+                priser.add(new ElpriserAPI.Elpris(sek, sek / 10, 10.0, t0.plusHours(timme), t0.plusHours(timme + 1)));
+            }
+            perZon.put(zon, priser);
+        }
+
+        ZonJamforelse.skriv(perZon);
+
+        String output = bos.toString();
+        assertThat(output).contains(String.format("00:00 %8s %8s %8s %8s %10s", "10,00", "12,00", "15,00", "10,00", "5,00"));
+        assertThat(output).contains(String.format("01:00 %8s %8s %8s %8s %10s", "20,00", "20,00", "45,00", "80,00", "60,00"));
+        assertThat(output).contains(String.format("02:00 %8s %8s %8s %8s %10s", "30,00", "35,00", "30,00", "40,00", "10,00"));
+        // (5 + 60 + 10) / 3
+        assertThat(output).contains("Medelspridning: 25,00 öre");
+        assertThat(output).contains("Största spridning: 60,00 öre Kl: 01:00");
+    }
+
+    @Test
+    void compareAllZones_reportsMissingData() {
+        ElpriserAPI.setMockResponse("[]");
+
+        Main.main(new String[]{"--zone", "ALL", "--date", "2025-09-04"});
+
+        assertThat(bos.toString()).contains("Kunde inte hämta alla zoner");
+    }
+
+    @Test
+    void batterySchedule_chargesCheapAndDischargesExpensive() {
+        String mockJson = """
+                [{"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"},
+                 {"SEK_per_kWh":1.10,"EUR_per_kWh":0.11,"EXR":10.0,"time_start":"2025-09-04T02:00:00+02:00","time_end":"2025-09-04T03:00:00+02:00"},
+                 {"SEK_per_kWh":1.10,"EUR_per_kWh":0.11,"EXR":10.0,"time_start":"2025-09-04T03:00:00+02:00","time_end":"2025-09-04T04:00:00+02:00"}]""";
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), mockJson);
+
+        // 10 kWh, 5 kW, ingen förlust: köp 10 kWh för 0,10 och sälj för 1,10 -> 10 kr vinst
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--battery", "10:5:1"});
+
+        String output = bos.toString();
+        assertThat(output).contains("00:00 Ladda 5,00 kWh");
+        assertThat(output).contains("01:00 Ladda 5,00 kWh (nivå 10,00 kWh)");
+        assertThat(output).contains("03:00 Ladda ur 5,00 kWh (nivå 0,00 kWh)");
+        assertThat(output).contains("Vinst för batteriet: 10,00 kr");
+    }
+
+    @Test
+    void forEachPris_andPrisStrom_matchGetPriser() {
+        for (int d = 4; d <= 7; d++) {
+            ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, d), """
+                    [{"SEK_per_kWh":0.%d0,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-0%dT00:00:00+02:00","time_end":"2025-09-0%dT01:00:00+02:00"},
+                     {"SEK_per_kWh":1.00,"EUR_per_kWh":0.10,"EXR":10.0,"time_start":"2025-09-0%dT01:00:00+02:00","time_end":"2025-09-0%dT02:00:00+02:00"}]""".formatted(d, d, d, d, d));
+        }
+        ElpriserAPI api = new ElpriserAPI(false);
+        LocalDate dag = LocalDate.of(2025, 9, 4);
+
+        List<ElpriserAPI.Elpris> forvantat = api.getPriser(dag, ElpriserAPI.Prisklass.SE3);
+        List<ElpriserAPI.Elpris> skickade = new ArrayList<>();
+        ElpriserAPI.HamtningsStatus status = api.forEachPris(dag, ElpriserAPI.Prisklass.SE3,
+                (start, startOffset, slut, slutOffset, sek, eur, exr) -> skickade.add(new ElpriserAPI.Elpris(sek, eur, exr,
+                        java.time.ZonedDateTime.ofInstant(java.time.Instant.ofEpochSecond(start), java.time.ZoneOffset.ofTotalSeconds(startOffset)),
+                        java.time.ZonedDateTime.ofInstant(java.time.Instant.ofEpochSecond(slut), java.time.ZoneOffset.ofTotalSeconds(slutOffset)))));
+        assertThat(status).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        assertThat(skickade).isEqualTo(forvantat);
+
+        // Fyra dagar à två priser, parallellt: 0,4 + 0,5 + 0,6 + 0,7 + 4 * 1,0
+        double summa = api.prisStrom(dag, dag.plusDays(3), ElpriserAPI.Prisklass.SE3)
+                .parallel().mapToDouble(ElpriserAPI.Elpris::sekPerKWh).sum();
+        assertThat(summa).isCloseTo(6.2, within(1e-9));
+        assertThat(api.prisStrom(dag, dag.plusDays(3), ElpriserAPI.Prisklass.SE3).map(p -> p.timeStart().getDayOfMonth()).toList())
+                .containsExactly(4, 4, 5, 5, 6, 6, 7, 7);
+    }
+
+    @Test
+    void formatJsonAndCsv_writeOnlyMachineReadableRows() {
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), """
+                [{"SEK_per_kWh":0.12229,"EUR_per_kWh":0.01112,"EXR":10.997148,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.09886,"EUR_per_kWh":0.00899,"EXR":10.997148,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"}]""");
+
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--format", "csv"});
+        assertThat(bos.toString().split("\\R")).containsExactly(
+                "typ,start,slut,sek_per_kwh,eur_per_kwh,exr",
+                "pris,2025-09-04T00:00:00+02:00,2025-09-04T01:00:00+02:00,0.12229,0.01112,10.997148",
+                "pris,2025-09-04T01:00:00+02:00,2025-09-04T02:00:00+02:00,0.09886,0.00899,10.997148",
+                "min,2025-09-04T01:00:00+02:00,2025-09-04T02:00:00+02:00,0.09886,,",
+                "max,2025-09-04T00:00:00+02:00,2025-09-04T01:00:00+02:00,0.12229,,",
+                "medel,2025-09-04T00:00:00+02:00,2025-09-04T02:00:00+02:00,0.11058,,");
+
+        bos.reset();
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--to", "2025-09-05", "--format", "json"});
+        String json = bos.toString();
+        assertThat(json).startsWith("[\n{\"typ\":\"pris\",\"start\":\"2025-09-04T00:00:00+02:00\"");
+        assertThat(json).contains("\"sek_per_kwh\":0.12229,\"eur_per_kwh\":0.01112,\"exr\":10.997148}");
+        assertThat(json).contains("{\"typ\":\"medel\",\"start\":\"2025-09-04T00:00:00+02:00\",\"slut\":\"2025-09-04T02:00:00+02:00\",\"sek_per_kwh\":0.11058}");
+        assertThat(json).endsWith("}\n]\n").doesNotContain("Hämtar", "MOCK");
+    }
+
+    @Test
+    void formatJson_withBadFlags_keepsDiagnosticsOffStandardOut() {
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), """
+                [{"SEK_per_kWh":0.12229,"EUR_per_kWh":0.01112,"EXR":10.997148,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"}]""");
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream fel = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(fel));
+        try {
+            Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--format", "json", "--charging", "abc", "--bogus"});
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        assertThat(bos.toString()).startsWith("[").endsWith("]\n").doesNotContain("Okänd flagga", "Fel på laddningsinput");
+        assertThat(fel.toString()).contains("Okänd flagga: --bogus", "Fel på laddningsinput: abc");
+    }
+
+    @Test
+    void rolling_showsWindowMinMaxAndMean() {
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), """
+                [{"SEK_per_kWh":0.30,"EUR_per_kWh":0.03,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"},
+                 {"SEK_per_kWh":0.50,"EUR_per_kWh":0.05,"EXR":10.0,"time_start":"2025-09-04T02:00:00+02:00","time_end":"2025-09-04T03:00:00+02:00"},
+                 {"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-09-04T03:00:00+02:00","time_end":"2025-09-04T04:00:00+02:00"}]""");
+
+        Main.main(new String[]{"--zone", "SE3", "--date", "2025-09-04", "--rolling", "2h"});
+
+        String output = bos.toString();
+        assertThat(output).contains("00:00 min 30,00 max 30,00 medel 30,00 öre");
+        assertThat(output).contains("01:00 min 10,00 max 30,00 medel 20,00 öre");
+        assertThat(output).contains("02:00 min 10,00 max 50,00 medel 30,00 öre");
+        assertThat(output).contains("03:00 min 20,00 max 50,00 medel 35,00 öre");
+    }
+
+    @Test
+    void backtest_reportsSavingsPerZoneAndYear() {
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 9, 4), """
+                [{"SEK_per_kWh":1.00,"EUR_per_kWh":0.10,"EXR":10.0,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"},
+                 {"SEK_per_kWh":0.50,"EUR_per_kWh":0.05,"EXR":10.0,"time_start":"2025-09-04T01:00:00+02:00","time_end":"2025-09-04T02:00:00+02:00"},
+                 {"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-09-04T02:00:00+02:00","time_end":"2025-09-04T03:00:00+02:00"},
+                 {"SEK_per_kWh":0.80,"EUR_per_kWh":0.08,"EXR":10.0,"time_start":"2025-09-04T03:00:00+02:00","time_end":"2025-09-04T04:00:00+02:00"}]""");
+
+        // 1h à 11 kW mellan 00:00 och 04:00: vid ankomst 1,00 kr/kWh, billigast 0,20 -> 8,80 kr
+        Main.main(new String[]{"--zone", "SE3", "--backtest", "2025-09-04:2025-09-04", "--charging", "1h",
+                "--strategy", "split", "--arrival", "00:00", "--departure", "04:00"});
+        assertThat(bos.toString()).contains("SE3 2025: 1 dagar, sparat 8,80 kr");
+
+        // Fast tid 03:00 -> 0,80 kr/kWh -> 2,20 kr
+        bos.reset();
+        Main.main(new String[]{"--zone", "SE3", "--backtest", "2025-09-04:2025-09-04", "--charging", "1h",
+                "--strategy", "03:00", "--arrival", "00:00", "--departure", "04:00"});
+        assertThat(bos.toString()).contains("SE3 2025: 1 dagar, sparat 2,20 kr");
+    }
+
+    @Test
+    void watch_printsOnlyNewIntervals_whenTomorrowArrives() {
+        LocalDate today = LocalDate.of(2025, 9, 4);
+        ElpriserAPI.setMockResponseForDate(today, """
+                [{"SEK_per_kWh":0.30,"EUR_per_kWh":0.03,"EXR":10.0,"time_start":"2025-09-04T22:00:00+02:00","time_end":"2025-09-04T23:00:00+02:00"},
+                 {"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-09-04T23:00:00+02:00","time_end":"2025-09-05T00:00:00+02:00"}]""");
+        Bevakning bevakning = new Bevakning(new ElpriserAPI(), ElpriserAPI.Prisklass.SE3, 2, () -> today);
+
+        assertThat(bevakning.varv()).isTrue();
+        assertThat(bevakning.varv()).isFalse();
+
+        ElpriserAPI.setMockResponseForDate(today.plusDays(1), """
+                [{"SEK_per_kWh":0.05,"EUR_per_kWh":0.005,"EXR":10.0,"time_start":"2025-09-05T00:00:00+02:00","time_end":"2025-09-05T01:00:00+02:00"}]""");
+        bos.reset();
+
+        assertThat(bevakning.varv()).isTrue();
+
+        String output = bos.toString();
+        assertThat(output).contains("00-01 5,00 öre");
+        assertThat(output).doesNotContain("22-23 30,00 öre");
+        // Lägsta/högsta/medel gäller idag, som i vanligt läge; laddfönstret får gå över midnatt
+        assertThat(output).contains("Lägsta pris: 20,00 öre Kl: 23");
+        assertThat(output).contains("Högsta pris: 30,00 öre Kl: 22");
+        assertThat(output).contains("Medelpris: 25,00 öre");
+        assertThat(output).contains("Billigaste 2h startar kl 23:00");
+        assertThat(output).contains("Påbörja laddning 23:00");
+    }
+
     @Test
     void handleInvalidZone() {
         Main.main(new String[]{"--zone", "SE5", "--date", "2025-09-04"});
@@ -0,0 +1,34 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RullandeStatistikTest {
+
+    @Test
+    void matchesBruteForce_whenAppendingPastBuffers() {
+        Random slump = new Random(42);
+        RullandeStatistik statistik = new RullandeStatistik(12);
+        double[] priser = new double[500];
+        for (int i = 0; i < priser.length; i++) {
+            priser[i] = slump.nextInt(20) / 10.0; // många lika värden
+            statistik.lagg(priser[i]);
+        }
+        for (int i = 0; i < priser.length; i++) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, summa = 0;
+            int start = Math.max(0, i - 11);
+            for (int j = start; j <= i; j++) {
+                min = Math.min(min, priser[j]);
+                max = Math.max(max, priser[j]);
+                summa += priser[j];
+            }
+            assertThat(statistik.min(i)).isEqualTo(min);
+            assertThat(statistik.max(i)).isEqualTo(max);
+            assertThat(statistik.medel(i)).isCloseTo(summa / (i - start + 1), within(1e-9));
+        }
+    }
+}
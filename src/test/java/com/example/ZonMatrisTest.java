@@ -0,0 +1,90 @@
+package com.example;
+
+import com.example.api.ElpriserAPI;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ZonMatrisTest {
+
+    private static final ZonedDateTime MIDNATT = ZonedDateTime.parse("2025-09-04T00:00:00+02:00");
+
+    @Test
+    void bygg_alignsZonesOnStartTime_withNaNForMissingIntervals() {
+        ZonMatris matris = matris();
+
+        assertThat(matris.antalIntervall()).isEqualTo(4);
+        assertThat(matris.tid(3)).isEqualTo(MIDNATT.plusHours(3));
+        assertThat(matris.priser(ElpriserAPI.Prisklass.SE4)[1]).isNaN();
+        assertThat(matris.priser(ElpriserAPI.Prisklass.SE2)[0]).isNaN();
+    }
+
+    @Test
+    void index_findsExactStartTimes_only() {
+        ZonMatris matris = matris();
+
+        assertThat(matris.index(MIDNATT.toEpochSecond())).isZero();
+        assertThat(matris.index(MIDNATT.plusHours(3).toEpochSecond())).isEqualTo(3);
+        assertThat(matris.index(MIDNATT.plusMinutes(30).toEpochSecond())).isEqualTo(-1);
+        assertThat(matris.index(MIDNATT.plusHours(4).toEpochSecond())).isEqualTo(-1);
+        assertThat(matris.index(MIDNATT.minusHours(1).toEpochSecond())).isEqualTo(-1);
+    }
+
+    @Test
+    void spridning_totalAndPerPair() {
+        ZonMatris matris = matris();
+
+        // Intervall 1 och 3 har bara en zon med pris, så spridningen är 0
+        assertThat(matris.spridning()).containsExactly(new double[]{0.40, 0.0, 0.10, 0.0}, within(1e-9));
+        assertThat(matris.spridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE4)[0]).isCloseTo(0.40, within(1e-9));
+        assertThat(matris.spridning(ElpriserAPI.Prisklass.SE4, ElpriserAPI.Prisklass.SE1)[0]).isCloseTo(-0.40, within(1e-9));
+        assertThat(matris.spridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE4)[1]).isNaN();
+    }
+
+    @Test
+    void storstaSpridning_ranksLargestFirst() {
+        ZonMatris matris = matris();
+
+        assertThat(matris.storstaSpridning(2)).containsExactly(0, 2);
+        // Bara intervall där båda zonerna har pris räknas
+        assertThat(matris.storstaSpridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE4, 2)).containsExactly(0, 2);
+    }
+
+    @Test
+    void storstaSpridning_kLargerThanValidIntervals_returnsOnlyValidOnes() {
+        ZonMatris matris = matris();
+
+        // SE1 och SE4 har pris samtidigt bara i intervall 0 och 2
+        assertThat(matris.storstaSpridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE4, 5)).containsExactly(0, 2);
+        // SE2 saknar priser helt
+        assertThat(matris.storstaSpridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE2, 3)).isEmpty();
+        // Totalen har ett värde i alla fyra intervallen
+        assertThat(matris.storstaSpridning(10)).containsExactly(0, 2, 1, 3);
+    }
+
+    @Test
+    void storstaSpridning_kZero_returnsEmpty() {
+        ZonMatris matris = matris();
+
+        assertThat(matris.storstaSpridning(0)).isEmpty();
+        assertThat(matris.storstaSpridning(ElpriserAPI.Prisklass.SE1, ElpriserAPI.Prisklass.SE4, 0)).isEmpty();
+    }
+
+    // SE1 har pris 00–02, SE4 00, 02 och 03, SE2 och SE3 saknas
+    private static ZonMatris matris() {
+        Map<ElpriserAPI.Prisklass, List<ElpriserAPI.Elpris>> perZon = new EnumMap<>(ElpriserAPI.Prisklass.class);
+        perZon.put(ElpriserAPI.Prisklass.SE1, List.of(pris(0, 0.10), pris(1, 0.10), pris(2, 0.10)));
+        perZon.put(ElpriserAPI.Prisklass.SE4, List.of(pris(0, 0.50), pris(2, 0.20), pris(3, 0.90)));
+        return ZonMatris.bygg(perZon);
+    }
+
+    private static ElpriserAPI.Elpris pris(int timme, double sek) {
+        return new ElpriserAPI.Elpris(sek, sek / 10, 10.0, MIDNATT.plusHours(timme), MIDNATT.plusHours(timme + 1));
+    }
+}
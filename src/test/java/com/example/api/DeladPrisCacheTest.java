@@ -0,0 +1,92 @@
+package com.example.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeladPrisCacheTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void pricesWrittenByOneInstance_areReadByAnother() throws Exception {
+        Path fil = tmp.resolve("elpriser.cache");
+        LocalDate datum = LocalDate.of(2025, 9, 4);
+        List<ElpriserAPI.Elpris> priser = dag(ZonedDateTime.parse("2025-09-04T00:00:00+02:00"));
+
+        try (DeladPrisCache skrivare = DeladPrisCache.oppna(fil, 16);
+             DeladPrisCache lasare = DeladPrisCache.oppna(fil, 16)) {
+            assertThat(skrivare.skriv(datum, ElpriserAPI.Prisklass.SE3, priser)).isTrue();
+
+            assertThat(lasare.las(datum, ElpriserAPI.Prisklass.SE3)).isEqualTo(priser);
+            assertThat(lasare.las(datum, ElpriserAPI.Prisklass.SE4)).isNull();
+
+            double[] sek = new double[DeladPrisCache.MAX_INTERVALL];
+            assertThat(lasare.lasSek(datum, ElpriserAPI.Prisklass.SE3, sek)).isEqualTo(96);
+            assertThat(sek[95]).isEqualTo(priser.get(95).sekPerKWh());
+        }
+    }
+
+    @Test
+    void getPriser_usesSharedCacheBeforeMockOrNetwork() throws Exception {
+        LocalDate datum = LocalDate.of(2025, 9, 4);
+        List<ElpriserAPI.Elpris> priser = dag(ZonedDateTime.parse("2025-09-04T00:00:00+02:00"));
+
+        try (DeladPrisCache cache = DeladPrisCache.oppna(tmp.resolve("elpriser.cache"), 16)) {
+            cache.skriv(datum, ElpriserAPI.Prisklass.SE1, priser);
+            ElpriserAPI.setMockResponse("[]");
+            ElpriserAPI api = new ElpriserAPI(false);
+            api.setDeladCache(cache);
+
+            assertThat(api.getPriser(datum, ElpriserAPI.Prisklass.SE1)).isEqualTo(priser);
+        } finally {
+            ElpriserAPI.clearMockResponse();
+        }
+    }
+
+    @Test
+    void twoInstancesOnSameFile_canWriteConcurrentlyInOneProcess() throws Exception {
+        Path fil = tmp.resolve("elpriser.cache");
+        LocalDate datum = LocalDate.of(2025, 9, 4);
+        List<ElpriserAPI.Elpris> priser = dag(ZonedDateTime.parse("2025-09-04T00:00:00+02:00"));
+
+        try (DeladPrisCache a = DeladPrisCache.oppna(fil, 16);
+             DeladPrisCache b = DeladPrisCache.oppna(fil, 16)) {
+            List<Thread> tradar = new ArrayList<>();
+            List<Throwable> fel = new CopyOnWriteArrayList<>();
+            for (DeladPrisCache cache : List.of(a, b, a, b)) {
+                tradar.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            cache.skriv(datum, ElpriserAPI.Prisklass.SE3, priser);
+                        }
+                    } catch (Throwable t) {
+                        fel.add(t);
+                    }
+                }));
+            }
+            for (Thread t : tradar) t.join();
+
+            assertThat(fel).isEmpty();
+            assertThat(b.las(datum, ElpriserAPI.Prisklass.SE3)).isEqualTo(priser);
+        }
+    }
+
+    private static List<ElpriserAPI.Elpris> dag(ZonedDateTime start) {
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>();
+        for (int i = 0; i < 96; i++) {
+            priser.add(new ElpriserAPI.Elpris(0.1 + i / 100.0, 0.01 + i / 1000.0, 11.2,
+                    start.plusMinutes(15L * i), start.plusMinutes(15L * (i + 1))));
+        }
+        return priser;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.api;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Omförsök, hedge-anrop, budget, statusar och sammanslagning av hämtningar mot en lokal HTTP-server.
+ */
+class ElpriserAPINatverkTest {
+
+    private static final String JSON = """
+            [{"SEK_per_kWh":0.12229,"EUR_per_kWh":0.01112,"EXR":10.997148,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"}]""";
+
+    // Svarar på anrop nummer n (från 1) med en statuskod
+    @FunctionalInterface
+    interface Svar {
+        int status(int nummer) throws InterruptedException;
+    }
+
+    private HttpServer server;
+    private ExecutorService serverTradar;
+    private final AtomicInteger anrop = new AtomicInteger();
+    private final CountDownLatch slapp = new CountDownLatch(1);
+    private volatile Svar svar = n -> 200;
+    // En ny dag per hämtning, så att ingen hämtning slås ihop med en annan
+    private LocalDate dag = LocalDate.of(2025, 9, 4);
+
+    @BeforeEach
+    void setup() throws Exception {
+        ElpriserAPI.clearMockResponse();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverTradar = Executors.newCachedThreadPool();
+        server.setExecutor(serverTradar);
+        server.createContext("/", utbyte -> {
+            int status;
+            try {
+                status = svar.status(anrop.incrementAndGet());
+            } catch (InterruptedException e) {
+                status = 500;
+            }
+            byte[] kropp = status == 200 ? JSON.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            utbyte.sendResponseHeaders(status, kropp.length == 0 ? -1 : kropp.length);
+            try (OutputStream ut = utbyte.getResponseBody()) {
+                ut.write(kropp);
+            } catch (IOException e) {
+                // Klienten har redan gett upp (tidsgräns eller avbrutet hedge-anrop)
+            }
+        });
+        server.start();
+        ElpriserAPI.setBasUrl("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        slapp.countDown();
+        server.stop(0);
+        serverTradar.shutdownNow();
+        ElpriserAPI.setBasUrl(null);
+    }
+
+    @Test
+    void serverError_isRetried_untilSuccess() {
+        svar = n -> n <= 2 ? 503 : 200;
+
+        ElpriserAPI.Hamtning hamtning = new ElpriserAPI(false).hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        assertThat(hamtning.priser()).hasSize(1);
+        assertThat(anrop.get()).isEqualTo(3);
+    }
+
+    @Test
+    void tooManyRequests_isRetried_thenGivesUpWithFel() {
+        svar = n -> 429;
+
+        ElpriserAPI.Hamtning hamtning = new ElpriserAPI(false).hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.FEL);
+        assertThat(hamtning.priser()).isEmpty();
+        // Ett första anrop och tre omförsök
+        assertThat(anrop.get()).isEqualTo(4);
+    }
+
+    @Test
+    void notFound_givesIngenData_withoutRetry() {
+        svar = n -> 404;
+
+        ElpriserAPI.Hamtning hamtning = new ElpriserAPI(false).hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.INGEN_DATA);
+        assertThat(anrop.get()).isEqualTo(1);
+    }
+
+    @Test
+    void otherClientError_givesFel_withoutRetry() {
+        svar = n -> 400;
+
+        ElpriserAPI.Hamtning hamtning = new ElpriserAPI(false).hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.FEL);
+        assertThat(anrop.get()).isEqualTo(1);
+    }
+
+    @Test
+    void stallingServer_givesTidsgrans_withinFetchDeadline() {
+        svar = n -> {
+            slapp.await(5, TimeUnit.SECONDS);
+            return 200;
+        };
+        // 200 ms per anrop ger högst 500 ms för hela hämtningen
+        ElpriserAPI api = new ElpriserAPI(false, Duration.ofSeconds(1), Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        ElpriserAPI.Hamtning hamtning = api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.TIDSGRANS);
+        // Efter första tidsgränsen finns tid för ett omförsök, efter det andra inte
+        assertThat(anrop.get()).isEqualTo(2);
+        assertThat(millis).isGreaterThanOrEqualTo(400).isLessThan(500 + 150);
+    }
+
+    @Test
+    void stallingServer_withHedge_staysWithinFetchDeadline() {
+        // 20 snabba svar så att hedge-anrop används, sedan hänger alla anrop
+        svar = n -> {
+            if (n > 20) slapp.await(5, TimeUnit.SECONDS);
+            return 200;
+        };
+        ElpriserAPI api = new ElpriserAPI(false, Duration.ofSeconds(1), Duration.ofMillis(300));
+        for (int i = 0; i < 20; i++) {
+            assertThat(api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3).status()).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        }
+
+        long start = System.nanoTime();
+        ElpriserAPI.Hamtning hamtning = api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.TIDSGRANS);
+        // Minst ett hedge-anrop skickades, men inget av anropen fick gå förbi 750 ms
+        assertThat(anrop.get()).isGreaterThanOrEqualTo(22);
+        assertThat(millis).isLessThan(750 + 150);
+    }
+
+    @Test
+    void exhaustedBudget_stopsRetries() {
+        svar = n -> 503;
+        ElpriserAPI api = new ElpriserAPI(false);
+
+        // Budgeten räcker till tio omförsök: tre hämtningar med tre var, sedan ett till
+        for (int i = 0; i < 4; i++) {
+            api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+        }
+        assertThat(anrop.get()).isEqualTo(3 * 4 + 2);
+
+        int fore = anrop.get();
+        ElpriserAPI.Hamtning hamtning = api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.FEL);
+        assertThat(anrop.get() - fore).isEqualTo(1);
+    }
+
+    @Test
+    void slowResponse_isHedged_afterEnoughLatencySamples() {
+        // 20 snabba svar ger en p95; det 21:a hänger och ska hinnas ifatt av ett hedge-anrop
+        svar = n -> {
+            if (n == 21) slapp.await(5, TimeUnit.SECONDS);
+            return 200;
+        };
+        ElpriserAPI api = new ElpriserAPI(false);
+        for (int i = 0; i < 20; i++) {
+            assertThat(api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3).status()).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        }
+
+        long start = System.nanoTime();
+        ElpriserAPI.Hamtning hamtning = api.hamtaPriser(nastaDag(), ElpriserAPI.Prisklass.SE3);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(hamtning.status()).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        assertThat(anrop.get()).isEqualTo(22);
+        assertThat(millis).isLessThan(4000);
+    }
+
+    @Test
+    void concurrentMisses_forOneKey_causeExactlyOneUpstreamCall() throws Exception {
+        CountDownLatch framme = new CountDownLatch(1);
+        svar = n -> {
+            framme.await(5, TimeUnit.SECONDS);
+            return 200;
+        };
+        LocalDate datum = nastaDag();
+        List<Thread> tradar = new ArrayList<>();
+        List<ElpriserAPI.Hamtning> resultat = new CopyOnWriteArrayList<>();
+        // Olika instanser delar processens sammanslagning
+        for (int i = 0; i < 8; i++) {
+            ElpriserAPI api = new ElpriserAPI(false);
+            tradar.add(Thread.ofVirtual().start(() -> resultat.add(api.hamtaPriser(datum, ElpriserAPI.Prisklass.SE3))));
+        }
+        // Vänta tills anropet är framme, ge de andra tid att ansluta, och släpp sedan svaret
+        while (anrop.get() == 0) Thread.sleep(5);
+        Thread.sleep(100);
+        framme.countDown();
+        for (Thread t : tradar) t.join();
+
+        assertThat(resultat).hasSize(8).allMatch(h -> h.status() == ElpriserAPI.HamtningsStatus.OK);
+        assertThat(anrop.get()).isEqualTo(1);
+
+        // När svaret har kommit är hämtningen inte längre pågående, så nästa miss hämtar på nytt
+        assertThat(new ElpriserAPI(false).hamtaPriser(datum, ElpriserAPI.Prisklass.SE3).status())
+                .isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        assertThat(anrop.get()).isEqualTo(2);
+    }
+
+    @Test
+    void abandonedFetch_isNotJoined_byLaterCalls() throws Exception {
+        svar = n -> {
+            if (n == 1) slapp.await(5, TimeUnit.SECONDS);
+            return 200;
+        };
+        LocalDate datum = nastaDag();
+        ElpriserAPI api = new ElpriserAPI(false);
+        ElpriserAPI.Hamtning[] avbruten = new ElpriserAPI.Hamtning[1];
+        Thread vantare = Thread.ofVirtual().start(() -> avbruten[0] = api.hamtaPriser(datum, ElpriserAPI.Prisklass.SE3));
+        while (anrop.get() == 0) Thread.sleep(5);
+
+        vantare.interrupt();
+        vantare.join();
+
+        assertThat(avbruten[0].status()).isEqualTo(ElpriserAPI.HamtningsStatus.FEL);
+        // Den övergivna hämtningen hänger kvar hos servern, men ett nytt anrop väntar inte på den
+        long start = System.nanoTime();
+        assertThat(api.hamtaPriser(datum, ElpriserAPI.Prisklass.SE3).status()).isEqualTo(ElpriserAPI.HamtningsStatus.OK);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(4000);
+        assertThat(anrop.get()).isEqualTo(2);
+    }
+
+    private LocalDate nastaDag() {
+        dag = dag.plusDays(1);
+        return dag;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ElpriserAPITolkaTest {
+
+    private static final String GILTIGT = """
+            {"SEK_per_kWh":0.12229,"EUR_per_kWh":0.01112,"EXR":10.997148,"time_start":"2025-09-04T00:00:00+02:00","time_end":"2025-09-04T01:00:00+02:00"}""";
+
+    @Test
+    void malformedObjects_areSkipped_withoutHanging() {
+        List<String> trasiga = List.of(
+                "[{\"a\":\"x}]",              // värdet tar inte slut
+                "[{\"SEK_per_kWh}]",          // nyckeln tar inte slut
+                "[{\"a\" }]",                 // kolon saknas
+                "[{\"a\":   }]",              // värde saknas
+                "[{\"time_start\":\"2025-09-04T00:00:00+02:00}]");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (String json : trasiga) {
+                assertThat(ElpriserAPI.tolka(json, (s, so, e, eo, sek, eur, exr) -> {})).as(json).isZero();
+            }
+        });
+    }
+
+    @Test
+    void brokenObject_doesNotStopFollowingObjects() {
+        List<Double> sek = new ArrayList<>();
+
+        int antal = assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                ElpriserAPI.tolka("[{\"a\":\"x}," + GILTIGT + "]", (s, so, e, eo, pris, eur, exr) -> sek.add(pris)));
+
+        assertThat(antal).isEqualTo(1);
+        assertThat(sek).containsExactly(0.12229);
+    }
+}
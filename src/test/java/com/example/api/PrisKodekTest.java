@@ -0,0 +1,76 @@
+package com.example.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrisKodekTest {
+
+    private static final ZoneOffset SOMMARTID = ZoneOffset.ofHours(2);
+    private static final ZoneOffset VINTERTID = ZoneOffset.ofHours(1);
+
+    @Test
+    void roundTrip_isExact_forQuarterHourDay() {
+        List<ElpriserAPI.Elpris> priser = serie(ZonedDateTime.parse("2025-09-04T00:00:00+02:00"), 96, 15);
+
+        byte[] block = PrisKodek.koda(priser);
+
+        assertThat(PrisKodek.avkoda(block)).isEqualTo(priser);
+        // Långt under JSON-formatets ~150 byte per intervall
+        assertThat(block.length).isLessThan(priser.size() * 20);
+    }
+
+    @Test
+    void roundTrip_isExact_acrossDaylightSavingChange() {
+        // 2025-10-26: 25 timmar, offset går från +02:00 till +01:00 kl 03:00 lokal tid
+        ZonedDateTime start = ZonedDateTime.parse("2025-10-26T00:00:00+02:00");
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ZonedDateTime s = start.plusMinutes(15L * i).withZoneSameInstant(i < 12 ? SOMMARTID : VINTERTID);
+            ZonedDateTime e = start.plusMinutes(15L * (i + 1)).withZoneSameInstant(i < 11 ? SOMMARTID : VINTERTID);
+            priser.add(new ElpriserAPI.Elpris(0.5 + i / 1000.0, 0.04, 11.0, s, e));
+        }
+
+        assertThat(PrisKodek.avkoda(PrisKodek.koda(priser))).isEqualTo(priser);
+    }
+
+    @Test
+    void roundTrip_keepsSpecialValues() {
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>(serie(ZonedDateTime.parse("2025-01-01T00:00:00+01:00"), 6, 60));
+        double[] special = {0.0, -0.0, -0.01234, 1e-9, 123456.789, Double.MIN_VALUE};
+        for (int i = 0; i < priser.size(); i++) {
+            ElpriserAPI.Elpris p = priser.get(i);
+            priser.set(i, new ElpriserAPI.Elpris(special[i], -special[i], p.exr(), p.timeStart(), p.timeEnd()));
+        }
+
+        assertThat(PrisKodek.avkoda(PrisKodek.koda(priser))).isEqualTo(priser);
+    }
+
+    @Test
+    void koda_rejectsIrregularSeries() {
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>(serie(ZonedDateTime.parse("2025-09-04T00:00:00+02:00"), 4, 60));
+        priser.remove(2);
+
+        assertThatThrownBy(() -> PrisKodek.koda(priser)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<ElpriserAPI.Elpris> serie(ZonedDateTime start, int antal, int minuter) {
+        Random r = new Random(42);
+        List<ElpriserAPI.Elpris> priser = new ArrayList<>();
+        for (int i = 0; i < antal; i++) {
+            // Priser med fem decimaler som i API:et
+            double sek = Math.round(r.nextDouble() * 200_000) / 100_000.0;
+            double eur = Math.round(sek / 11.0 * 100_000) / 100_000.0;
+            priser.add(new ElpriserAPI.Elpris(sek, eur, 11.0,
+                    start.plusMinutes((long) minuter * i), start.plusMinutes((long) minuter * (i + 1))));
+        }
+        return priser;
+    }
+}
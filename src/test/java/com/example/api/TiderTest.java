@@ -0,0 +1,61 @@
+package com.example.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TiderTest {
+
+    @Test
+    void labels_comeFromTables() {
+        ZonedDateTime tid = ZonedDateTime.parse("2025-10-26T02:45:00+02:00");
+
+        assertThat(Tider.timme(tid)).isEqualTo("02");
+        assertThat(Tider.minut(tid)).isEqualTo("02:45");
+        assertThat(Tider.minut(tid)).isSameAs(Tider.minut(tid.plusDays(1)));
+        assertThat(Tider.minut(ZonedDateTime.parse("2025-10-26T23:59:00+01:00"))).isEqualTo("23:59");
+    }
+
+    @Test
+    void tid_keepsGivenOffset() {
+        ZonedDateTime vinter = ZonedDateTime.parse("2025-10-26T02:00:00+01:00");
+
+        ZonedDateTime tid = Tider.tid(vinter.toEpochSecond(), 3600);
+
+        assertThat(tid).isEqualTo(vinter);
+        assertThat(tid.getOffset()).isEqualTo(ZoneOffset.ofHours(1));
+    }
+
+    @Test
+    void intervallSekunder_fromFirstTwoStarts_orFirstInterval() {
+        ZonedDateTime t0 = ZonedDateTime.parse("2025-09-04T00:00:00+02:00");
+        ElpriserAPI.Elpris kvart = new ElpriserAPI.Elpris(0.1, 0.01, 10.0, t0, t0.plusMinutes(15));
+        ElpriserAPI.Elpris nasta = new ElpriserAPI.Elpris(0.1, 0.01, 10.0, t0.plusMinutes(15), t0.plusMinutes(30));
+
+        assertThat(Tider.intervallSekunder(List.of(kvart, nasta))).isEqualTo(900);
+        assertThat(Tider.intervallSekunder(List.of(kvart))).isEqualTo(900);
+        assertThat(Tider.intervallSekunder(List.of(new ElpriserAPI.Elpris(0.1, 0.01, 10.0, t0, t0)))).isEqualTo(3600);
+    }
+
+    @Test
+    void parsing_sharesEndAndNextStart_acrossDstChange() {
+        ElpriserAPI.setMockResponseForDate(LocalDate.of(2025, 10, 26), """
+                [{"SEK_per_kWh":0.10,"EUR_per_kWh":0.01,"EXR":10.0,"time_start":"2025-10-26T02:45:00+02:00","time_end":"2025-10-26T02:00:00+01:00"},
+                 {"SEK_per_kWh":0.20,"EUR_per_kWh":0.02,"EXR":10.0,"time_start":"2025-10-26T02:00:00+01:00","time_end":"2025-10-26T02:15:00+01:00"}]""");
+        try {
+            List<ElpriserAPI.Elpris> priser = new ElpriserAPI(false).getPriser(LocalDate.of(2025, 10, 26), ElpriserAPI.Prisklass.SE3);
+
+            assertThat(priser.get(1).timeStart()).isSameAs(priser.get(0).timeEnd());
+            assertThat(priser.get(0).timeEnd()).isEqualTo(ZonedDateTime.parse("2025-10-26T02:00:00+01:00"));
+            assertThat(Tider.minut(priser.get(0).timeStart())).isEqualTo("02:45");
+            assertThat(Tider.timme(priser.get(1).timeEnd())).isEqualTo("02");
+        } finally {
+            ElpriserAPI.clearMockResponse();
+        }
+    }
+}